@@ -0,0 +1,137 @@
+package benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Generates deterministic OSM XML with a grid-like road network. Nodes lie on a jittered grid, and ways follow grid
+ * rows or columns for a random number of nodes, so ways share nodes at crossings like real streets. Tags are drawn
+ * from a mix resembling a typical regional extract, including ways without a highway tag.
+ */
+public class SyntheticOSMGenerator {
+    private static final String[] HIGHWAYS = {"residential", "service", "footway", "track", "unclassified", "tertiary", "secondary", "primary", "cycleway", "motorway"};
+    private static final int[] HIGHWAY_WEIGHTS = {30, 18, 14, 8, 8, 7, 5, 4, 4, 2};
+    private static final String[] OTHER_TAGS = {"building", "landuse", "waterway", "natural"};
+    private static final double GRID_SPACING = 0.0005;
+    private final long nodeCount;
+    private final long wayCount;
+    private final long seed;
+
+    public SyntheticOSMGenerator(long nodeCount, long wayCount, long seed) {
+        this.nodeCount = nodeCount;
+        this.wayCount = wayCount;
+        this.seed = seed;
+    }
+
+    public static void main(String... args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: SyntheticOSMGenerator <output> <nodes> [ways] [seed]");
+            return;
+        }
+        long nodes = Long.parseLong(args[1]);
+        long ways = args.length > 2 ? Long.parseLong(args[2]) : nodes / 8;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        new SyntheticOSMGenerator(nodes, ways, seed).generate(Paths.get(args[0]));
+    }
+
+    public void generate(Path output) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            generate(writer);
+        }
+    }
+
+    public void generate(Writer writer) throws IOException {
+        Random random = new Random(seed);
+        long side = Math.max(2, (long) Math.ceil(Math.sqrt(nodeCount)));
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<osm version=\"0.6\" generator=\"SyntheticOSMGenerator\">\n");
+        writer.write(" <bounds minlat=\"55.0\" minlon=\"12.0\" maxlat=\"" + format(55.0 + side * GRID_SPACING) + "\" maxlon=\"" + format(12.0 + side * GRID_SPACING) + "\"/>\n");
+        for (long index = 0; index < nodeCount; index++) {
+            double lat = 55.0 + (index / side) * GRID_SPACING + random.nextGaussian() * GRID_SPACING / 10;
+            double lon = 12.0 + (index % side) * GRID_SPACING + random.nextGaussian() * GRID_SPACING / 10;
+            writer.write(" <node id=\"" + nodeID(index) + "\" version=\"1\" lat=\"" + format(lat) + "\" lon=\"" + format(lon) + "\"");
+            // A few nodes carry tags of their own, like traffic signals or crossings.
+            if (random.nextInt(50) == 0)
+                writer.write(">\n  <tag k=\"highway\" v=\"traffic_signals\"/>\n </node>\n");
+            else
+                writer.write("/>\n");
+        }
+        for (long way = 0; way < wayCount; way++) {
+            writer.write(" <way id=\"" + (way + 1) + "\" version=\"1\">\n");
+            long start = (long) (random.nextDouble() * nodeCount);
+            boolean isRow = random.nextBoolean();
+            int length = 2 + (int) Math.min(60, Math.abs(random.nextGaussian() * 12));
+            long row = start / side;
+            long column = start % side;
+            for (int step = 0; step < length; step++) {
+                long index = isRow ? row * side + column + step : (row + step) * side + column;
+                if ((isRow && column + step >= side) || index >= nodeCount)
+                    break;
+                writer.write("  <nd ref=\"" + nodeID(index) + "\"/>\n");
+            }
+            writeTags(writer, random);
+            writer.write(" </way>\n");
+        }
+        writer.write("</osm>\n");
+    }
+
+    private void writeTags(Writer writer, Random random) throws IOException {
+        if (random.nextInt(10) == 0) {
+            writeTag(writer, OTHER_TAGS[random.nextInt(OTHER_TAGS.length)], "yes");
+            return;
+        }
+        String highway = pick(random);
+        writeTag(writer, "highway", highway);
+        int oneway = random.nextInt(100);
+        if (highway.equals("motorway") || oneway < 8)
+            writeTag(writer, "oneway", "yes");
+        else if (oneway < 10)
+            writeTag(writer, "oneway", "-1");
+        else if (oneway < 11)
+            writeTag(writer, "junction", "roundabout");
+        if (random.nextBoolean())
+            writeTag(writer, "name", "Street " + random.nextInt(100000));
+        if (random.nextInt(4) == 0)
+            writeTag(writer, "maxspeed", Integer.toString(30 + 10 * random.nextInt(10)));
+        if (random.nextInt(5) == 0)
+            writeTag(writer, "surface", random.nextBoolean() ? "asphalt" : "gravel");
+    }
+
+    private static String pick(Random random) {
+        int total = 0;
+        for (int weight : HIGHWAY_WEIGHTS)
+            total += weight;
+        int value = random.nextInt(total);
+        for (int index = 0; index < HIGHWAYS.length; index++) {
+            value -= HIGHWAY_WEIGHTS[index];
+            if (value < 0)
+                return HIGHWAYS[index];
+        }
+        return HIGHWAYS[0];
+    }
+
+    private static void writeTag(Writer writer, String key, String value) throws IOException {
+        writer.write("  <tag k=\"" + key + "\" v=\"" + value + "\"/>\n");
+    }
+
+    /**
+     * Node IDs increase with the index, with gaps as left by deleted nodes in real data.
+     */
+    private static long nodeID(long index) {
+        return 1000000L + index * 3 + (index * 7919 % 3);
+    }
+
+    /**
+     * Formats with seven decimals, the precision of OSM coordinates, without the cost of String.format.
+     */
+    private static String format(double coordinate) {
+        long fixed = Math.round(Math.abs(coordinate) * 10000000);
+        String fraction = Long.toString(fixed % 10000000);
+        return (coordinate < 0 ? "-" : "") + fixed / 10000000 + "." + "0".repeat(7 - fraction.length()) + fraction;
+    }
+}
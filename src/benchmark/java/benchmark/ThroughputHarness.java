@@ -0,0 +1,301 @@
+package benchmark;
+
+import osmreader.ComponentPruner;
+import osmreader.GraphRenumberer;
+import osmreader.StageStatistics;
+import osmreader.Translator;
+import osmreader.ZCurveIDStrategy;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Runs the full translation on synthetic inputs of several sizes, in several configurations, and reports the
+ * throughput of every stage, the peak heap usage and the peak temporary disk usage. Results are written as CSV and
+ * compared with a baseline; the harness exits with status 1 if a stage got slower than the baseline by more than the
+ * tolerance. Stages that were added, renamed or removed since the baseline was written are listed, and call for a
+ * new baseline.
+ * <p>
+ * Every run is preceded by a fixed calibration workload of writing, reading, parsing and sorting lines, and the
+ * median calibration throughput is recorded with the results. Baseline throughputs are scaled by the ratio of the
+ * calibration throughputs before they are compared, so a baseline recorded on one host can be checked on another.
+ * <p>
+ * Configurations: "default", "prune" (drop components below 10 nodes), "renumber" (reverse Cuthill-McKee, which
+ * sorts the final edges in two orders at once) and "parallel" (merges in 4 key ranges).
+ * <p>
+ * Arguments: --sizes 100000,1000000 (node counts), --configurations default,prune,renumber,parallel,
+ * --memory 256 (sort memory in MiB), --work build/benchmark, --baseline file, --output file, --tolerance 0.25,
+ * --write-baseline (store the results as the new baseline).
+ */
+public class ThroughputHarness {
+    private static final long MiB = 1024 * 1024;
+    // Stages shorter than this are too noisy to compare with the baseline.
+    private static final double MINIMUM_COMPARED_SECONDS = 0.5;
+    private static final int CALIBRATION_LINES = 1_000_000;
+    private static final int CALIBRATION_ROUNDS = 2;
+    private static final String CALIBRATION_KEY = "calibration,0,workload,MiB/s";
+    private static final Map<String, List<String>> FILTER = Map.of("highway",
+            List.of("motorway", "primary", "secondary", "tertiary", "unclassified", "residential", "service"));
+
+    public static void main(String... args) throws IOException, XMLStreamException, InterruptedException {
+        Map<String, String> arguments = parseArguments(args);
+        List<Long> sizes = new ArrayList<>();
+        for (String size : arguments.getOrDefault("sizes", "100000,1000000").split(","))
+            sizes.add(Long.parseLong(size.trim()));
+        List<String> configurations = List.of(arguments.getOrDefault("configurations", "default,prune,renumber,parallel").split(","));
+        long memory = Long.parseLong(arguments.getOrDefault("memory", "256")) * MiB;
+        Path workDirectory = Paths.get(arguments.getOrDefault("work", "build/benchmark"));
+        Path baseline = Paths.get(arguments.getOrDefault("baseline", "src/benchmark/resources/benchmark/baseline.csv"));
+        Path output = Paths.get(arguments.getOrDefault("output", workDirectory.resolve("results.csv").toString()));
+        double tolerance = Double.parseDouble(arguments.getOrDefault("tolerance", "0.25"));
+        Files.createDirectories(workDirectory);
+
+        Map<String, Double> results = new LinkedHashMap<>();
+        List<Double> calibrations = new ArrayList<>();
+        for (String configuration : configurations) {
+            for (long size : sizes) {
+                calibrations.add(calibrate(workDirectory));
+                results.putAll(run(configuration.trim(), size, memory, workDirectory));
+            }
+        }
+        calibrations.sort(Comparator.naturalOrder());
+        double calibration = calibrations.get(calibrations.size() / 2);
+        results.put(CALIBRATION_KEY, calibration);
+        System.out.printf("Calibration: %.1f MiB/s%n", calibration);
+        write(results, output);
+        System.out.println("Results written to " + output);
+        if (arguments.containsKey("write-baseline")) {
+            write(results, baseline);
+            System.out.println("Baseline written to " + baseline);
+            return;
+        }
+        if (Files.exists(baseline) && !compare(results, read(baseline), tolerance))
+            System.exit(1);
+    }
+
+    /**
+     * Runs a fixed workload resembling a sort stage, and reports the best throughput of a few rounds.
+     */
+    private static double calibrate(Path workDirectory) throws IOException {
+        Path file = workDirectory.resolve("calibration");
+        double best = 0;
+        try {
+            for (int round = 0; round < CALIBRATION_ROUNDS; round++) {
+                long start = System.nanoTime();
+                Random random = new Random(1);
+                try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+                    for (int index = 0; index < CALIBRATION_LINES; index++) {
+                        writer.write(random.nextInt(Integer.MAX_VALUE) + "," + random.nextInt(1000000));
+                        writer.newLine();
+                    }
+                }
+                List<String> lines = Files.readAllLines(file);
+                lines.sort(Comparator.comparingLong(line -> Long.parseLong(line, 0, line.indexOf(','), 10)));
+                double seconds = (System.nanoTime() - start) / 1e9;
+                best = Math.max(best, Files.size(file) / seconds / MiB);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        return best;
+    }
+
+    /**
+     * @return measurements keyed by "configuration,size,stage,metric".
+     */
+    private static Map<String, Double> run(String configuration, long size, long memory, Path workDirectory) throws IOException, XMLStreamException, InterruptedException {
+        Path input = workDirectory.resolve("synthetic_" + size + ".osm");
+        if (!Files.exists(input)) {
+            System.out.println("Generating " + input);
+            new SyntheticOSMGenerator(size, size / 8, size).generate(input);
+        }
+        Path outputDirectory = Files.createDirectories(workDirectory.resolve("output_" + configuration + "_" + size));
+        Path tempRoot = Files.createDirectories(workDirectory.resolve("temp"));
+
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+        AtomicLong peakTempUsage = new AtomicLong();
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakTempUsage.accumulateAndGet(sizeOf(tempRoot), Math::max);
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "temp-usage-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+
+        List<StageStatistics> stages;
+        long start = System.nanoTime();
+        try (Reader reader = Files.newBufferedReader(input);
+             Translator translator = new Translator(reader, memory, new ZCurveIDStrategy(), tempRoot)) {
+            translator.setFilter(FILTER);
+            switch (configuration) {
+                case "default" -> {
+                }
+                case "prune" -> translator.setComponentPruning(10, ComponentPruner.Mode.DROP);
+                case "renumber" -> translator.setNodeOrdering(GraphRenumberer.Ordering.REVERSE_CUTHILL_MCKEE);
+                case "parallel" -> translator.setMergeParallelism(4);
+                default -> throw new IllegalArgumentException("Unknown configuration: " + configuration);
+            }
+            translator.translate(outputDirectory);
+            stages = translator.getStageStatistics();
+        } finally {
+            sampler.interrupt();
+            sampler.join();
+        }
+        Duration total = Duration.ofNanos(System.nanoTime() - start);
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools)
+            peakHeap += pool.getPeakUsage().getUsed();
+
+        Map<String, Double> results = new LinkedHashMap<>();
+        long inputSize = Files.size(input);
+        String prefix = configuration + "," + size + ",";
+        for (StageStatistics stage : stages) {
+            results.put(prefix + stage.name() + ",seconds", stage.elapsed().toNanos() / 1e9);
+            results.put(prefix + stage.name() + ",MiB/s", stage.throughput() / MiB);
+        }
+        results.put(prefix + "total,seconds", total.toNanos() / 1e9);
+        results.put(prefix + "total,MiB/s", inputSize / (total.toNanos() / 1e9) / MiB);
+        results.put(prefix + "total,peak heap MiB", (double) peakHeap / MiB);
+        results.put(prefix + "total,peak temp MiB", (double) peakTempUsage.get() / MiB);
+        System.out.printf("%s, %,d nodes, %,d MiB input: %.1f s, %.1f MiB/s, peak heap %,d MiB, peak temp %,d MiB%n",
+                configuration, size, inputSize / MiB, total.toNanos() / 1e9, inputSize / (total.toNanos() / 1e9) / MiB, peakHeap / MiB, peakTempUsage.get() / MiB);
+        return results;
+    }
+
+    /**
+     * Compares the throughput of every stage that ran long enough with the baseline, scaled by the ratio of the
+     * calibration throughputs. Stages of the measured configurations and sizes found only in the results or only in
+     * the baseline are reported, since they mean the baseline is out of date.
+     * @return whether no stage regressed by more than the tolerance.
+     */
+    private static boolean compare(Map<String, Double> results, Map<String, Double> baseline, double tolerance) {
+        Set<String> runs = new HashSet<>();
+        for (String key : results.keySet())
+            runs.add(runOf(key));
+        for (String key : results.keySet())
+            if (!baseline.containsKey(key))
+                System.out.printf("%-70s not in baseline%n", key);
+        for (String key : new TreeSet<>(baseline.keySet()))
+            if (runs.contains(runOf(key)) && !results.containsKey(key))
+                System.out.printf("%-70s in baseline, but not measured%n", key);
+
+        double scale = 1;
+        if (baseline.containsKey(CALIBRATION_KEY)) {
+            scale = results.get(CALIBRATION_KEY) / baseline.get(CALIBRATION_KEY);
+            System.out.printf("Calibration %.1f MiB/s, baseline %.1f MiB/s: baseline throughputs scaled by %.2f%n",
+                    results.get(CALIBRATION_KEY), baseline.get(CALIBRATION_KEY), scale);
+        }
+
+        boolean passed = true;
+        for (Map.Entry<String, Double> entry : results.entrySet()) {
+            if (!entry.getKey().endsWith(",MiB/s") || entry.getKey().equals(CALIBRATION_KEY))
+                continue;
+            String secondsKey = entry.getKey().substring(0, entry.getKey().lastIndexOf(',')) + ",seconds";
+            Double recorded = baseline.get(entry.getKey());
+            if (recorded == null || baseline.getOrDefault(secondsKey, 0.0) < MINIMUM_COMPARED_SECONDS)
+                continue;
+            double expected = recorded * scale;
+            double change = entry.getValue() / expected - 1;
+            boolean regressed = change < -tolerance;
+            System.out.printf("%-70s %10.1f MiB/s, baseline %10.1f MiB/s (%+.0f%%)%s%n",
+                    entry.getKey(), entry.getValue(), expected, change * 100, regressed ? "  REGRESSION" : "");
+            passed &= !regressed;
+        }
+        return passed;
+    }
+
+    private static void write(Map<String, Double> results, Path path) throws IOException {
+        if (path.getParent() != null)
+            Files.createDirectories(path.getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write("configuration,nodes,stage,metric,value");
+            writer.newLine();
+            for (Map.Entry<String, Double> entry : results.entrySet()) {
+                writer.write(entry.getKey() + "," + String.format(Locale.ROOT, "%.3f", entry.getValue()));
+                writer.newLine();
+            }
+        }
+    }
+
+    private static Map<String, Double> read(Path path) throws IOException {
+        Map<String, Double> results = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.lastIndexOf(',');
+                results.put(line.substring(0, separator), Double.parseDouble(line.substring(separator + 1)));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return the "configuration,size" part of a key.
+     */
+    private static String runOf(String key) {
+        return key.substring(0, key.indexOf(',', key.indexOf(',') + 1));
+    }
+
+    private static long sizeOf(Path directory) {
+        try (Stream<Path> walk = Files.walk(directory)) {
+            return walk.mapToLong(file -> {
+                try {
+                    return Files.isRegularFile(file) ? Files.size(file) : 0;
+                } catch (IOException e) {
+                    // Temporary files may be deleted while walking.
+                    return 0;
+                }
+            }).sum();
+        } catch (IOException | RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private static Map<String, String> parseArguments(String[] args) {
+        Map<String, String> arguments = new HashMap<>();
+        for (int index = 0; index < args.length; index++) {
+            if (!args[index].startsWith("--"))
+                throw new IllegalArgumentException("Unexpected argument: " + args[index]);
+            String name = args[index].substring(2);
+            boolean hasValue = index + 1 < args.length && !args[index + 1].startsWith("--");
+            arguments.put(name, hasValue ? args[++index] : "");
+        }
+        return arguments;
+    }
+}
@@ -0,0 +1,206 @@
+package application;
+
+import osmreader.Translator;
+import osmreader.ZCurveIDStrategy;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many translations concurrently in one JVM. All jobs draw their sort memory from one shared budget and place
+ * their temporary files under the same temporary roots. Tag filters are loaded once per filter file, and loaded
+ * again only when the file changes.
+ */
+public class BatchTranslator implements Closeable {
+    private static final long MiB = 1024 * 1024;
+    private static final long MINIMUM_RESERVATION = 16 * MiB;
+    private final ExecutorService executor;
+    private final Semaphore memoryBudget;
+    private final long memoryLimit;
+    private final List<Path> tempRoots;
+    private final Map<Path, CachedFilter> filters = new ConcurrentHashMap<>();
+    private final AtomicInteger startedJobs = new AtomicInteger();
+    private ExecutorService mergeExecutor;
+    private int mergeParallelism = 1;
+
+    /**
+     * @param parallelism maximum number of jobs translated at the same time.
+     * @param memoryLimit sort memory shared by all running jobs, in bytes.
+     * @param tempRoots directories under which every job creates its temporary directories.
+     */
+    public BatchTranslator(int parallelism, long memoryLimit, List<Path> tempRoots) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> new Thread(runnable, "translation-job-" + threadCount.incrementAndGet()));
+        this.memoryLimit = Math.max(memoryLimit, MiB);
+        this.memoryBudget = new Semaphore((int) (this.memoryLimit / MiB), true);
+        this.tempRoots = List.copyOf(tempRoots);
+    }
+
+    /**
+     * Translates all jobs, and blocks until every one of them has finished. A failing job does not stop the others.
+     * @return one summary per job, in the order of the job list.
+     */
+    public List<JobSummary> translate(List<TranslationJob> jobs) throws InterruptedException {
+        List<Future<JobSummary>> futures = new ArrayList<>(jobs.size());
+        for (TranslationJob job : jobs)
+            futures.add(submit(job));
+        List<JobSummary> summaries = new ArrayList<>(jobs.size());
+        for (Future<JobSummary> future : futures) {
+            try {
+                summaries.add(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Queues a single job. Failures are reported in the summary rather than by the future.
+     */
+    public CompletableFuture<JobSummary> submit(TranslationJob job) {
+        return CompletableFuture.supplyAsync(() -> translate(job), executor);
+    }
+
+    private JobSummary translate(TranslationJob job) {
+        long reservation = reservationFor(job);
+        int permits = (int) (reservation / MiB);
+        try {
+            memoryBudget.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return JobSummary.failed(job, Duration.ZERO, reservation, e);
+        }
+        long start = System.nanoTime();
+        try (Reader reader = Files.newBufferedReader(job.input());
+             Translator translator = new Translator(reader, reservation, new ZCurveIDStrategy(), rotatedTempRoots())) {
+            translator.setLogPrefix(job.input() + " -> " + job.outputDirectory() + " : ");
+            translator.setFilter(filterFor(job.filter()));
+            if (mergeExecutor != null) {
+                translator.setMergeParallelism(mergeParallelism);
+                translator.setMergeExecutor(mergeExecutor);
+            }
+            translator.translate(job.outputDirectory());
+            return JobSummary.succeeded(job, Duration.ofNanos(System.nanoTime() - start), reservation, translator.getStageStatistics());
+        } catch (XMLStreamException | IOException | RuntimeException e) {
+            return JobSummary.failed(job, Duration.ofNanos(System.nanoTime() - start), reservation, e);
+        } finally {
+            memoryBudget.release(permits);
+        }
+    }
+
+    /**
+     * Every job starts its round-robin over the temporary roots one root further than the job before, so the first
+     * files of concurrent jobs, which are written at the same time, do not all land on the first root.
+     */
+    private List<Path> rotatedTempRoots() {
+        List<Path> roots = new ArrayList<>(tempRoots);
+        Collections.rotate(roots, -Math.floorMod(startedJobs.getAndIncrement(), roots.size()));
+        return roots;
+    }
+
+    /**
+     * Small extracts do not need a full share of the budget, so a job reserves roughly the size of its input,
+     * bounded by the total budget. Large jobs wait until enough memory has been released by the others.
+     */
+    private long reservationFor(TranslationJob job) {
+        long inputSize;
+        try {
+            inputSize = Files.size(job.input());
+        } catch (IOException e) {
+            inputSize = MINIMUM_RESERVATION;
+        }
+        long reservation = Math.min(memoryLimit, Math.max(MINIMUM_RESERVATION, inputSize));
+        return Math.max(MiB, reservation / MiB * MiB);
+    }
+
+    private Map<String, List<String>> filterFor(Path path) throws IOException {
+        Path key = path.toAbsolutePath();
+        FileTime modified = Files.getLastModifiedTime(key);
+        CachedFilter cached = filters.get(key);
+        if (cached != null && cached.modified().equals(modified))
+            return cached.filter();
+        try {
+            return filters.compute(key, (file, previous) -> {
+                if (previous != null && previous.modified().equals(modified))
+                    return previous;
+                try {
+                    return new CachedFilter(modified, Main.loadTags(file));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).filter();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Merges the runs of every sort in this many key ranges at once, on one pool shared by all jobs.
+     */
+    public void setMergeParallelism(int mergeParallelism) {
+        if (mergeExecutor != null)
+            mergeExecutor.shutdown();
+        this.mergeParallelism = mergeParallelism;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.mergeExecutor = mergeParallelism <= 1 ? null : Executors.newFixedThreadPool(mergeParallelism, runnable -> {
+            Thread thread = new Thread(runnable, "translation-merge-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return sort memory not currently reserved by a running job, in bytes.
+     */
+    public long getAvailableMemory() {
+        return memoryBudget.availablePermits() * MiB;
+    }
+
+    /**
+     * @return number of distinct filter files loaded so far.
+     */
+    public int getCachedFilterCount() {
+        return filters.size();
+    }
+
+    /**
+     * Stops accepting jobs, and waits for the jobs already queued to finish.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            if (mergeExecutor != null)
+                mergeExecutor.shutdown();
+        }
+    }
+
+    private record CachedFilter(FileTime modified, Map<String, List<String>> filter) {
+    }
+}
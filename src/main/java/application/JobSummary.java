@@ -0,0 +1,28 @@
+package application;
+
+import osmreader.StageStatistics;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of a single translation job in batch mode.
+ */
+public record JobSummary(TranslationJob job, boolean succeeded, Duration elapsed, long memoryReservation, String error,
+                         List<StageStatistics> stages) {
+
+    public static JobSummary succeeded(TranslationJob job, Duration elapsed, long memoryReservation, List<StageStatistics> stages) {
+        return new JobSummary(job, true, elapsed, memoryReservation, null, stages);
+    }
+
+    public static JobSummary failed(TranslationJob job, Duration elapsed, long memoryReservation, Exception exception) {
+        return new JobSummary(job, false, elapsed, memoryReservation, exception.toString(), List.of());
+    }
+
+    @Override
+    public String toString() {
+        String status = succeeded ? "OK" : "FAILED (" + error + ")";
+        return String.format("%s -> %s : %s in %,.1f s using %,d MiB",
+                job.input(), job.outputDirectory(), status, elapsed.toMillis() / 1000.0, memoryReservation / (1024 * 1024));
+    }
+}
@@ -1,12 +1,19 @@
 package application;
 
+import osmreader.ComponentPruner;
+import osmreader.GraphRenumberer;
 import osmreader.Translator;
 import osmreader.ZCurveIDStrategy;
 
 import javax.xml.stream.XMLStreamException;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -25,22 +32,103 @@ public class Main {
             System.out.println("Invalid Arguments ... ");
             return;
         }
+        if (arguments.containsKey("b")) {
+            translateBatch(arguments);
+            return;
+        }
+        if (arguments.containsKey("s") || arguments.containsKey("sp")) {
+            serve(arguments);
+            return;
+        }
         Path inputPath = Paths.get(arguments.get("i"));
         Path tagPath = Paths.get(arguments.get("f"));
         Path outputDirectory = arguments.get("o") == null ? inputPath.getParent() : Paths.get(arguments.get("o"));
         long memoryLimit = arguments.get("m") == null ? GiB : Long.parseLong(arguments.get("m")) * MiB;
+        List<Path> tempRoots = parseTempRoots(arguments);
 
         try (Reader reader = Files.newBufferedReader(inputPath);
-            Translator translator = new Translator(reader, memoryLimit, new ZCurveIDStrategy())){
+            Translator translator = new Translator(reader, memoryLimit, new ZCurveIDStrategy(), tempRoots)){
             Map<String, List<String>> tags= loadTags(tagPath);
             System.out.println("The following tags were loaded from \""+tagPath+"\"");
             System.out.println(tags);
             translator.setFilter(tags);
+            if (arguments.get("c") != null) {
+                ComponentPruner.Mode mode = arguments.get("cm") == null ? ComponentPruner.Mode.DROP : ComponentPruner.Mode.valueOf(arguments.get("cm").toUpperCase());
+                translator.setComponentPruning(Integer.parseInt(arguments.get("c")), mode);
+            }
+            if (arguments.get("r") != null)
+                translator.setNodeOrdering(GraphRenumberer.Ordering.valueOf(arguments.get("r").toUpperCase()));
+            if (arguments.get("j") != null)
+                translator.setMergeParallelism(Integer.parseInt(arguments.get("j")));
             translator.translate(outputDirectory);
         } catch (XMLStreamException | IOException e) {
             e.printStackTrace();
         }
     }
+    private static void translateBatch(Map<String, String> arguments) {
+        Path jobsPath = Paths.get(arguments.get("b"));
+        long memoryLimit = arguments.get("m") == null ? GiB : Long.parseLong(arguments.get("m")) * MiB;
+        int parallelism = arguments.get("p") == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(arguments.get("p"));
+        List<Path> tempRoots = parseTempRoots(arguments);
+
+        try (BatchTranslator batchTranslator = new BatchTranslator(parallelism, memoryLimit, tempRoots)) {
+            if (arguments.get("j") != null)
+                batchTranslator.setMergeParallelism(Integer.parseInt(arguments.get("j")));
+            List<TranslationJob> jobs = loadJobs(jobsPath);
+            System.out.println("Translating "+jobs.size()+" jobs from \""+jobsPath+"\" with "+parallelism+" workers");
+            List<JobSummary> summaries = batchTranslator.translate(jobs);
+            long failed = summaries.stream().filter(summary -> !summary.succeeded()).count();
+            System.out.println("Finished "+summaries.size()+" jobs, "+failed+" failed:");
+            for (JobSummary summary : summaries)
+                System.out.println(summary);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    private static void serve(Map<String, String> arguments) {
+        // Serves on a Unix domain socket only its owner can use. A loopback port (-sp) is open to all local users,
+        // so it has to be asked for explicitly.
+        SocketAddress socketAddress = arguments.get("sp") != null
+                ? new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(arguments.get("sp")))
+                : UnixDomainSocketAddress.of(arguments.get("s"));
+        long memoryLimit = arguments.get("m") == null ? GiB : Long.parseLong(arguments.get("m")) * MiB;
+        int parallelism = arguments.get("p") == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(arguments.get("p"));
+        List<Path> tempRoots = parseTempRoots(arguments);
+
+        try (BatchTranslator batchTranslator = new BatchTranslator(parallelism, memoryLimit, tempRoots)) {
+            if (arguments.get("j") != null)
+                batchTranslator.setMergeParallelism(Integer.parseInt(arguments.get("j")));
+            try (TranslationServer server = new TranslationServer(batchTranslator, socketAddress)) {
+                System.out.println("Serving translations on "+server.getAddress()+" with "+parallelism+" workers");
+                server.serve();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    private static List<Path> parseTempRoots(Map<String, String> arguments) {
+        // Several temporary directories are separated like class path entries, e.g. "/mnt/a:/mnt/b".
+        if (arguments.get("t") == null)
+            return List.of(Paths.get(System.getProperty("java.io.tmpdir")));
+        List<Path> tempRoots = new ArrayList<>();
+        for (String tempRoot : arguments.get("t").split(File.pathSeparator))
+            tempRoots.add(Paths.get(tempRoot));
+        return tempRoots;
+    }
+    private static List<TranslationJob> loadJobs(Path path) throws IOException {
+        List<TranslationJob> jobs = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#"))
+                    continue;
+                jobs.add(TranslationJob.parse(line));
+            }
+        }
+        return jobs;
+    }
     private static boolean argumentsAreValid(Map<String, String> arguments) {
         //TODO: Validate the arguments ...
         return true;
@@ -58,7 +146,7 @@ public class Main {
         }
         return arguments;
     }
-    private static Map<String, List<String>> loadTags(Path path) throws IOException {
+    static Map<String, List<String>> loadTags(Path path) throws IOException {
         Map<String, List<String>> tags = new HashMap<>();
         try (BufferedReader reader = Files.newBufferedReader(path)) {
             String line;
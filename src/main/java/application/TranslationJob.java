@@ -0,0 +1,24 @@
+package application;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * One entry of a batch job list: an OSM input, a tag filter and an output directory.
+ */
+public record TranslationJob(Path input, Path filter, Path outputDirectory) {
+
+    /**
+     * Parses a job list line of the form "input,filter[,output]". Without an output directory, output is written
+     * next to the input, as in single translation mode.
+     */
+    public static TranslationJob parse(String line) {
+        String[] fields = line.split(",");
+        if (fields.length < 2 || fields.length > 3)
+            throw new IllegalArgumentException("Invalid job: \"" + line + "\"");
+        Path input = Paths.get(fields[0].trim());
+        Path filter = Paths.get(fields[1].trim());
+        Path outputDirectory = fields.length == 3 ? Paths.get(fields[2].trim()) : input.toAbsolutePath().getParent();
+        return new TranslationJob(input, filter, outputDirectory);
+    }
+}
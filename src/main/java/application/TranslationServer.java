@@ -0,0 +1,230 @@
+package application;
+
+import osmreader.StageStatistics;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves translation jobs on a Unix domain socket or a local port, so many short translations share one JVM whose
+ * code is already compiled, and whose tag filters and thread pools are already loaded. Clients send one command per
+ * line, and get one line back:
+ * <ul>
+ *     <li>"translate input,filter[,output]" queues a job, and answers "queued id".</li>
+ *     <li>"status id" answers "pending", or the summary of the finished job.</li>
+ *     <li>"metrics" answers space separated key=value pairs, with stage durations summed over all jobs.</li>
+ *     <li>"shutdown" answers "stopping", and stops accepting clients. Queued jobs still finish.</li>
+ * </ul>
+ * Anything else is answered with "error" and a message. Job paths must be absolute, since the client and the server
+ * need not share a working directory.
+ * <p>
+ * Clients are not authenticated: anyone who can connect can make the server read any file it can read, and
+ * overwrite "nodes.txt" and "edges.txt" in any directory it can write. A Unix domain socket is therefore created
+ * readable and writable by its owner only. A local port is open to every user of the machine, and should only be
+ * used on a machine without untrusted users.
+ */
+public class TranslationServer implements Closeable {
+    private static final int RETAINED_JOBS = 1024;
+    private final BatchTranslator translator;
+    private final SocketAddress address;
+    private final ServerSocketChannel server;
+    private final ExecutorService clients;
+    private final AtomicInteger nextID = new AtomicInteger();
+    // Most recent jobs by ID, so a long running server does not keep every summary.
+    private final Map<Integer, CompletableFuture<JobSummary>> jobs = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, CompletableFuture<JobSummary>> eldest) {
+            return size() > RETAINED_JOBS && eldest.getValue().isDone();
+        }
+    };
+    private final Map<String, Long> stageNanos = new TreeMap<>();
+    private long succeeded;
+    private long failed;
+    private long jobNanos;
+
+    /**
+     * Binds the server. A stale socket file left by a server that did not shut down is replaced.
+     * @param address a {@link UnixDomainSocketAddress}, or an internet address, which should be the loopback address.
+     */
+    public TranslationServer(BatchTranslator translator, SocketAddress address) throws IOException {
+        this.translator = translator;
+        this.address = address;
+        if (address instanceof UnixDomainSocketAddress unixAddress) {
+            this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            bindOwnerOnly(unixAddress.getPath());
+        } else {
+            this.server = ServerSocketChannel.open();
+            server.bind(address);
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        this.clients = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "translation-client-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Binds the socket in a private directory next to the socket path, restricts it to the owner, and only then
+     * moves it into place, so no other user can connect in between.
+     */
+    private void bindOwnerOnly(Path socket) throws IOException {
+        Files.deleteIfExists(socket);
+        Path parent = socket.toAbsolutePath().getParent();
+        if (!Files.getFileStore(parent).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            return;
+        }
+        Path directory = Files.createTempDirectory(parent, ".translation-server",
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        Path privateSocket = directory.resolve("socket");
+        try {
+            server.bind(UnixDomainSocketAddress.of(privateSocket));
+            Files.setPosixFilePermissions(privateSocket, PosixFilePermissions.fromString("rw-------"));
+            Files.move(privateSocket, socket, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(privateSocket);
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Accepts clients until a client sends "shutdown". Queued jobs keep running; closing the translator waits for
+     * them.
+     */
+    public void serve() throws IOException {
+        try {
+            while (server.isOpen()) {
+                SocketChannel client = server.accept();
+                clients.execute(() -> handle(client));
+            }
+        } catch (ClosedChannelException e) {
+            // Closed by a shutdown command, while waiting for a client or just before.
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (client;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(client), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] command = line.trim().split("\\s+", 2);
+                String response;
+                try {
+                    response = execute(command[0], command.length > 1 ? command[1] : "");
+                } catch (RuntimeException e) {
+                    response = "error " + e.getMessage();
+                }
+                writer.write(response);
+                writer.newLine();
+                writer.flush();
+                if (command[0].equals("shutdown"))
+                    break;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private String execute(String command, String argument) throws IOException {
+        switch (command) {
+            case "translate":
+                TranslationJob translationJob = TranslationJob.parse(argument);
+                for (Path path : List.of(translationJob.input(), translationJob.filter(), translationJob.outputDirectory()))
+                    if (!path.isAbsolute())
+                        return "error path is not absolute: " + path;
+                return "queued " + submit(translationJob);
+            case "status":
+                CompletableFuture<JobSummary> job;
+                synchronized (jobs) {
+                    job = jobs.get(Integer.parseInt(argument));
+                }
+                if (job == null)
+                    return "error unknown job " + argument;
+                return job.isDone() ? job.join().toString() : "pending";
+            case "metrics":
+                return metrics();
+            case "shutdown":
+                server.close();
+                return "stopping";
+            default:
+                return "error unknown command \"" + command + "\"";
+        }
+    }
+
+    private int submit(TranslationJob job) {
+        int id = nextID.incrementAndGet();
+        CompletableFuture<JobSummary> future = translator.submit(job);
+        synchronized (jobs) {
+            jobs.put(id, future);
+        }
+        future.thenAccept(this::record);
+        return id;
+    }
+
+    private synchronized void record(JobSummary summary) {
+        if (summary.succeeded())
+            succeeded++;
+        else
+            failed++;
+        jobNanos += summary.elapsed().toNanos();
+        for (StageStatistics stage : summary.stages())
+            stageNanos.merge(stage.name().toLowerCase().replace(' ', '_'), stage.elapsed().toNanos(), Long::sum);
+    }
+
+    private synchronized String metrics() {
+        long finished = succeeded + failed;
+        StringBuilder metrics = new StringBuilder();
+        metrics.append("jobs.submitted=").append(nextID.get());
+        metrics.append(" jobs.pending=").append(nextID.get() - finished);
+        metrics.append(" jobs.succeeded=").append(succeeded);
+        metrics.append(" jobs.failed=").append(failed);
+        metrics.append(String.format(" jobs.mean_seconds=%.3f", finished == 0 ? 0 : jobNanos / 1e9 / finished));
+        metrics.append(" memory.available_mib=").append(translator.getAvailableMemory() / (1024 * 1024));
+        metrics.append(" filters.cached=").append(translator.getCachedFilterCount());
+        for (Map.Entry<String, Long> stage : stageNanos.entrySet())
+            metrics.append(String.format(" stage.%s.seconds=%.3f", stage.getKey(), stage.getValue() / 1e9));
+        return metrics.toString();
+    }
+
+    public SocketAddress getAddress() throws IOException {
+        return server.isOpen() ? server.getLocalAddress() : address;
+    }
+
+    /**
+     * Stops accepting clients, and removes the socket file.
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        clients.shutdown();
+        if (address instanceof UnixDomainSocketAddress unixAddress)
+            Files.deleteIfExists(unixAddress.getPath());
+    }
+}
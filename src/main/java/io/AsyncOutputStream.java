@@ -0,0 +1,170 @@
+package io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Output stream that hands full buffers to a dedicated writer thread, so the producing thread never blocks on disk
+ * unless both buffers are in flight. Failures on the writer thread are rethrown on the next write, flush or close.
+ */
+public class AsyncOutputStream extends OutputStream {
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    private static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+    private final FileChannel channel;
+    // Room for both buffers and the end marker, so handing over never blocks, even when the writer has stopped.
+    private final BlockingQueue<ByteBuffer> filledBuffers = new ArrayBlockingQueue<>(3);
+    private final BlockingQueue<ByteBuffer> emptyBuffers = new ArrayBlockingQueue<>(2);
+    private final Thread writerThread;
+    private ByteBuffer buffer;
+    private volatile IOException failure;
+    private boolean closed;
+
+    public AsyncOutputStream(Path path) throws IOException {
+        this(path, DEFAULT_BUFFER_SIZE);
+    }
+
+    public AsyncOutputStream(Path path, int bufferSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        this.emptyBuffers.add(ByteBuffer.allocate(bufferSize));
+        this.writerThread = new Thread(this::drain, "async-writer-" + path.getFileName());
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (!buffer.hasRemaining())
+            swap();
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        while (length > 0) {
+            if (!buffer.hasRemaining())
+                swap();
+            int count = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Hands the current buffer to the writer thread. Does not wait for the data to reach the disk.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (buffer.position() > 0)
+            swap();
+    }
+
+    /**
+     * Waits for the buffered data to be written. The writer thread is stopped and the file closed even when writing
+     * failed or the calling thread is interrupted.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        boolean interrupted = false;
+        try {
+            if (buffer.position() > 0) {
+                buffer.flip();
+                filledBuffers.offer(buffer);
+            }
+            filledBuffers.offer(END_OF_STREAM);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            interrupted = true;
+        } finally {
+            // Only reached with a live writer when interrupted; stop it instead of leaving it blocked.
+            writerThread.interrupt();
+            while (writerThread.isAlive()) {
+                try {
+                    writerThread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            channel.close();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing asynchronous writer");
+        }
+        checkFailure();
+    }
+
+    private void swap() throws IOException {
+        try {
+            buffer.flip();
+            filledBuffers.put(buffer);
+            buffer = emptyBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for asynchronous writer");
+        }
+        checkFailure();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed");
+        checkFailure();
+    }
+
+    /**
+     * Throws a new exception on every call, since callers such as try-with-resources may add one to another.
+     */
+    private void checkFailure() throws IOException {
+        if (failure != null)
+            throw new IOException("Asynchronous write failed", failure);
+    }
+
+    /**
+     * Writes buffers until the end marker or the first failure. On a failure, the buffer in hand is returned, so a
+     * producer waiting for an empty buffer wakes up and sees the failure. The file is closed when the writer stops,
+     * since writers such as OutputStreamWriter do not close their stream after a failed write.
+     */
+    private void drain() {
+        try {
+            while (true) {
+                ByteBuffer filled = filledBuffers.take();
+                if (filled == END_OF_STREAM)
+                    return;
+                try {
+                    while (filled.hasRemaining())
+                        channel.write(filled);
+                } catch (IOException e) {
+                    failure = e;
+                    return;
+                } finally {
+                    filled.clear();
+                    emptyBuffers.offer(filled);
+                }
+            }
+        } catch (InterruptedException e) {
+            failure = new InterruptedIOException("Asynchronous writer was interrupted");
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                if (failure == null)
+                    failure = e;
+            }
+        }
+    }
+}
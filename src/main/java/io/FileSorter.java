@@ -4,61 +4,120 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class FileSorter {
+    private static final int SAMPLES_PER_BATCH = 1024;
     private Comparator<String> lineComparator;
     private long maxChunkSize;
-    private Path tempDirectory;
+    private TempDirectories tempDirectories;
     private Charset charset;
+    private int mergeParallelism = 1;
+    private ExecutorService executor;
 
     public FileSorter(long maxChunkSize, Charset charset, Comparator<String> lineComparator) {
         this.maxChunkSize = maxChunkSize;
         this.lineComparator = lineComparator;
-        this.tempDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+        this.tempDirectories = TempDirectories.of(Paths.get(System.getProperty("java.io.tmpdir")));
         this.charset = charset;
     }
 
     public Path externalSort(Path input) throws IOException {
-        Path output = Files.createTempFile("sorted",input.toFile().getName());
-        List<Path> sortedBatches = sortInBatches(input);
-        return mergeSortedBatches(sortedBatches, output);
-    }
-
-    private Path mergeSortedBatches(List<Path> sortedBatches, Path output) throws IOException {
-        ReaderQueue readerQueue = new ReaderQueue(lineComparator);
-        try (BufferedWriter writer = Files.newBufferedWriter(output, charset)) {
-            try {
-                for (Path file : sortedBatches)
-                    readerQueue.add(new CachedReader(Files.newBufferedReader(file, charset)));
-                while (readerQueue.size() > 0) {
-                    CachedReader reader = readerQueue.poll();
-                    String line = reader.readLine();
-                    writer.write(line);
-                    writer.newLine();
-                    if (!reader.isEmpty())
-                        readerQueue.add(reader);
-                    else
-                        reader.close();
-                }
-            }
-            finally {
-                for (CachedReader reader : readerQueue)
+        List<SortedBatch> sortedBatches = sortInBatches(input, List.of(lineComparator)).get(0);
+        return mergeSortedBatches(sortedBatches, input, lineComparator);
+    }
+
+    /**
+     * Sorts the input by several orders, while reading it only once: every chunk is sorted and saved once per
+     * order. The orders are merged on demand, so runs of orders that turn out not to be needed are only written.
+     * @return handle for merging each order, which deletes unmerged runs when closed.
+     */
+    public MultiOrderSort externalSort(Path input, List<Comparator<String>> orders) throws IOException {
+        return new MultiOrderSort(this, input, orders, sortInBatches(input, orders));
+    }
+
+    /**
+     * Sorts the input, and passes the sorted lines to the consumer as they are merged, without writing a sorted file.
+     */
+    public void externalSort(Path input, LineConsumer output) throws IOException {
+        List<SortedBatch> sortedBatches = sortInBatches(input, List.of(lineComparator)).get(0);
+        mergeSortedBatches(sortedBatches, lineComparator, output);
+    }
+
+    Path mergeSortedBatches(List<SortedBatch> sortedBatches, Path input, Comparator<String> comparator) throws IOException {
+        Path output = tempDirectories.createTempFile("sorted", input.toFile().getName(), input);
+        if (mergeParallelism > 1 && sortedBatches.size() > 1) {
+            mergeInParallel(sortedBatches, merge -> merge.merge(sortedBatches, output, mergeParallelism), comparator);
+            return output;
+        }
+        try (BufferedWriter writer = FileUtility.newAsyncWriter(output, charset)) {
+            mergeSequentially(sortedBatches, comparator, FileUtility.lineConsumer(writer));
+        }
+        return output;
+    }
+
+    void mergeSortedBatches(List<SortedBatch> sortedBatches, Comparator<String> comparator, LineConsumer output) throws IOException {
+        if (mergeParallelism > 1 && sortedBatches.size() > 1)
+            mergeInParallel(sortedBatches, merge -> merge.merge(sortedBatches, output, mergeParallelism), comparator);
+        else
+            mergeSequentially(sortedBatches, comparator, output);
+    }
+
+    private void mergeSequentially(List<SortedBatch> sortedBatches, Comparator<String> comparator, LineConsumer output) throws IOException {
+        ReaderQueue readerQueue = new ReaderQueue(comparator);
+        try {
+            for (SortedBatch sortedBatch : sortedBatches)
+                readerQueue.add(new CachedReader(Files.newBufferedReader(sortedBatch.file(), charset)));
+            while (readerQueue.size() > 0) {
+                CachedReader reader = readerQueue.poll();
+                output.accept(reader.readLine());
+                if (!reader.isEmpty())
+                    readerQueue.add(reader);
+                else
                     reader.close();
-                for (Path temporaryFile : sortedBatches)
-                    Files.delete(temporaryFile);
             }
         }
-        return output;
+        finally {
+            for (CachedReader reader : readerQueue)
+                reader.close();
+            for (SortedBatch sortedBatch : sortedBatches)
+                Files.delete(sortedBatch.file());
+        }
     }
 
-    private List<Path> sortInBatches(Path path) throws IOException {
-        List<Path> sortedBatches = new ArrayList<>();
+    private void mergeInParallel(List<SortedBatch> sortedBatches, ParallelMergeTask task, Comparator<String> comparator) throws IOException {
+        ExecutorService mergeExecutor = executor != null ? executor : Executors.newFixedThreadPool(mergeParallelism);
+        try {
+            task.run(new ParallelMerge(comparator, charset, tempDirectories, mergeExecutor));
+        } finally {
+            if (mergeExecutor != executor)
+                mergeExecutor.shutdown();
+            for (SortedBatch sortedBatch : sortedBatches)
+                Files.delete(sortedBatch.file());
+        }
+    }
+
+    private interface ParallelMergeTask {
+        void run(ParallelMerge merge) throws IOException;
+    }
+
+    /**
+     * @return the sorted batches of every order, in the order of the comparators.
+     */
+    private List<List<SortedBatch>> sortInBatches(Path path, List<Comparator<String>> orders) throws IOException {
+        List<List<SortedBatch>> sortedBatches = new ArrayList<>();
+        for (int order = 0; order < orders.size(); order++)
+            sortedBatches.add(new ArrayList<>());
+        // Every additional order keeps its own list of references to the lines of a chunk.
+        long referenceOverhead = 8L * (orders.size() - 1);
         try (BufferedReader reader = Files.newBufferedReader(path, charset)) {
             List<String> chunk = new ArrayList<>();
             long currentChunkSize = 0;
@@ -66,30 +125,60 @@ public class FileSorter {
                 String line = reader.readLine();
                 if (line == null)
                     break;
-                if (currentChunkSize + sizeOf(line) > maxChunkSize) {
-                    sortedBatches.add(sortAndSave(chunk));
+                if (currentChunkSize + sizeOf(line) + referenceOverhead > maxChunkSize) {
+                    sortAndSave(chunk, orders, sortedBatches);
                     chunk = new ArrayList<>();
                     currentChunkSize=0;
                 }
                 chunk.add(line);
-                currentChunkSize+=sizeOf(line) ;
+                currentChunkSize+=sizeOf(line) + referenceOverhead;
             }
             if (currentChunkSize > 0)
-                sortedBatches.add(sortAndSave(chunk));
+                sortAndSave(chunk, orders, sortedBatches);
         }
         return sortedBatches;
     }
 
-    private Path sortAndSave(List<String> chunk) throws IOException {
-        Path tempFile = Files.createTempFile(tempDirectory,"sorted_batch", "temporary_file");
-        chunk.sort(lineComparator);
-        try (BufferedWriter writer = Files.newBufferedWriter(tempFile, charset)) {
-            for (String line : chunk) {
+    private void sortAndSave(List<String> chunk, List<Comparator<String>> orders, List<List<SortedBatch>> sortedBatches) throws IOException {
+        for (int order = 0; order < orders.size(); order++) {
+            List<String> sortedChunk = order == orders.size() - 1 ? chunk : new ArrayList<>(chunk);
+            sortedBatches.get(order).add(sortAndSave(sortedChunk, orders.get(order)));
+        }
+    }
+
+    private SortedBatch sortAndSave(List<String> chunk, Comparator<String> comparator) throws IOException {
+        Path tempFile = tempDirectories.createTempFile("sorted_batch", "temporary_file");
+        chunk.sort(comparator);
+        // Sample lines and their offsets as splitter candidates for a parallel merge.
+        boolean isSampling = mergeParallelism > 1;
+        int sampleInterval = Math.max(64, chunk.size() / SAMPLES_PER_BATCH);
+        List<String> samples = new ArrayList<>();
+        long[] sampleOffsets = new long[isSampling ? (chunk.size() + sampleInterval - 1) / sampleInterval : 0];
+        long offset = 0;
+        try (BufferedWriter writer = FileUtility.newAsyncWriter(tempFile, charset)) {
+            for (int index = 0; index < chunk.size(); index++) {
+                String line = chunk.get(index);
+                if (isSampling) {
+                    if (index % sampleInterval == 0) {
+                        sampleOffsets[samples.size()] = offset;
+                        samples.add(line);
+                    }
+                    offset += sizeOnDisk(line, charset);
+                }
                 writer.write(line);
                 writer.newLine();
             }
         }
-        return tempFile;
+        return new SortedBatch(tempFile, samples, sampleOffsets);
+    }
+
+    /**
+     * @return number of bytes the line takes in a file, including the line separator.
+     */
+    static long sizeOnDisk(String line, Charset charset) {
+        boolean isSingleByte = charset.equals(StandardCharsets.US_ASCII) || charset.equals(StandardCharsets.ISO_8859_1);
+        long length = isSingleByte ? line.length() : line.getBytes(charset).length;
+        return length + System.lineSeparator().length();
     }
 
     private static long sizeOf(String line) {
@@ -105,7 +194,30 @@ public class FileSorter {
         this.charset = charset;
     }
 
+    /**
+     * Merges the sorted batches of every sort in this many disjoint key ranges at once. Ranges are split at keys
+     * sampled while the batches are written. The line comparator must be safe to use from several threads.
+     */
+    public void setMergeParallelism(int mergeParallelism) {
+        this.mergeParallelism = mergeParallelism;
+    }
+
+    /**
+     * Sets the executor running parallel merges. Without one, every parallel merge starts and stops its own threads.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
     public void setTempDirectory(Path tempDirectory) {
-        this.tempDirectory = tempDirectory;
+        this.tempDirectories = TempDirectories.of(tempDirectory);
+    }
+
+    /**
+     * Spreads sorted batches round-robin over the given directories, and places the merged output on a different
+     * device than the input where possible.
+     */
+    public void setTempDirectories(TempDirectories tempDirectories) {
+        this.tempDirectories = tempDirectories;
     }
 }
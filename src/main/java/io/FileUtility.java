@@ -1,12 +1,16 @@
 package io;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.*;
+import java.util.Comparator;
+import java.util.function.ToLongFunction;
 
 public class FileUtility {
 
@@ -19,6 +23,34 @@ public class FileUtility {
         }
     }
 
+    /**
+     * Opens a writer whose output is written to disk by a dedicated thread, see {@link AsyncOutputStream}.
+     */
+    public static BufferedWriter newAsyncWriter(Path path, Charset charset) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new AsyncOutputStream(path), charset));
+    }
+
+    /**
+     * @return consumer writing every line it receives to the writer, followed by a line separator.
+     */
+    public static LineConsumer lineConsumer(BufferedWriter writer) {
+        return line -> {
+            writer.write(line);
+            writer.newLine();
+        };
+    }
+
+    /**
+     * Passes every line of the file to the consumer.
+     */
+    public static void forEachLine(Path path, Charset charset, LineConsumer consumer) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, charset)) {
+            String line;
+            while ((line = reader.readLine()) != null)
+                consumer.accept(line);
+        }
+    }
+
     /**
      *  Filters one file, given a file of node IDs... This method works under the precondition that both files are sorted.
      *  Duplicates in filter file are ignored.
@@ -28,25 +60,34 @@ public class FileUtility {
      */
     public static Path filterFile(Path input, Path tempDirectory, Path filter, Comparator<String> comparator) throws IOException {
         Path output = Files.createTempFile(tempDirectory,"temp", "filtered");
-        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.US_ASCII);
-             Scanner inputScanner = new Scanner(input);
-             Scanner filterScanner = new Scanner(filter)) {
-            String previousFilterLine = null;
-            while (filterScanner.hasNext()) {
-                String filterLine = filterScanner.nextLine();
-                if (previousFilterLine != null && previousFilterLine.equals(filterLine))
-                    continue;
-                previousFilterLine = filterLine;
-                while (inputScanner.hasNext()) {
-                    String inputLine = inputScanner.nextLine();
-                    if (comparator.compare(inputLine, filterLine) == 0) {
-                        writer.write(inputLine);
-                        writer.newLine();
-                        break;
-                    }
+        try (BufferedReader inputReader = Files.newBufferedReader(input, StandardCharsets.US_ASCII);
+             BufferedReader filterReader = Files.newBufferedReader(filter, StandardCharsets.US_ASCII);
+             BufferedWriter writer = newAsyncWriter(output, StandardCharsets.US_ASCII)) {
+            String filterLine = filterReader.readLine();
+            String inputLine;
+            while ((inputLine = inputReader.readLine()) != null) {
+                while (filterLine != null && comparator.compare(inputLine, filterLine) > 0)
+                    filterLine = filterReader.readLine();
+                if (filterLine != null && comparator.compare(inputLine, filterLine) == 0) {
+                    writer.write(inputLine);
+                    writer.newLine();
                 }
             }
         }
         return output;
     }
+
+    /**
+     * Extracts a numeric column from a comma separated line, without splitting the line.
+     * @param index zero-based index of the column.
+     */
+    public static ToLongFunction<String> longColumn(int index) {
+        return line -> {
+            int start = 0;
+            for (int column = 0; column < index; column++)
+                start = line.indexOf(',', start) + 1;
+            int end = line.indexOf(',', start);
+            return Long.parseLong(line, start, end < 0 ? line.length() : end, 10);
+        };
+    }
 }
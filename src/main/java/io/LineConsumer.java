@@ -0,0 +1,21 @@
+package io;
+
+import java.io.IOException;
+
+/**
+ * Receives lines one at a time, such as the lines of a merge that are used right away instead of written to a file.
+ */
+@FunctionalInterface
+public interface LineConsumer {
+    void accept(String line) throws IOException;
+
+    /**
+     * @return consumer passing every line to this consumer, and then to the next.
+     */
+    default LineConsumer andThen(LineConsumer next) {
+        return line -> {
+            accept(line);
+            next.accept(line);
+        };
+    }
+}
@@ -0,0 +1,72 @@
+package io;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Releases the memory mappings of a temporary file when it is closed. A mapping otherwise lives until its buffer is
+ * garbage collected, and until then a deleted file keeps its disk space on Linux, and cannot be deleted on Windows.
+ * Mappings are released through sun.misc.Unsafe.invokeCleaner where available; without it, space is freed lazily.
+ */
+final class MappedFiles {
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private MappedFiles() {
+    }
+
+    /**
+     * Unmaps the buffers and deletes the file. The buffers, and any views of them, must not be used afterwards. If
+     * the file cannot be deleted while a mapping remains, it is deleted when the JVM exits.
+     */
+    static void release(Path file, MappedByteBuffer[] mappings) throws IOException {
+        unmap(mappings);
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            if (INVOKE_CLEANER != null)
+                throw e;
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * Unmaps the buffers, skipping null entries for segments that were never mapped. The buffers, and any views of
+     * them, must not be used afterwards.
+     */
+    static void unmap(MappedByteBuffer[] mappings) {
+        if (INVOKE_CLEANER == null)
+            return;
+        for (MappedByteBuffer mapping : mappings) {
+            if (mapping == null)
+                continue;
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, mapping);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Left to the garbage collector.
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fixed length int array backed by a memory mapped file, so arrays larger than the heap are paged in and out by the
+ * operating system. The array is initialised to zero. On close the file is unmapped and deleted, so its disk space
+ * is freed right away; see {@link MappedFiles}. The array must not be used after close.
+ */
+public class MappedIntArray implements Closeable {
+    private static final int SEGMENT_SHIFT = 28;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+    private final Path file;
+    private final long length;
+    private MappedByteBuffer[] mappings;
+    private IntBuffer[] segments;
+
+    public MappedIntArray(Path file, long length) throws IOException {
+        this.file = file;
+        this.length = length;
+        this.mappings = new MappedByteBuffer[(int) ((length + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+        this.segments = new IntBuffer[mappings.length];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            for (int segment = 0; segment < segments.length; segment++) {
+                long start = (long) segment << SEGMENT_SHIFT;
+                long size = Math.min(length - start, 1L << SEGMENT_SHIFT);
+                mappings[segment] = channel.map(FileChannel.MapMode.READ_WRITE, start * Integer.BYTES, size * Integer.BYTES);
+                segments[segment] = mappings[segment].order(ByteOrder.nativeOrder()).asIntBuffer();
+            }
+        } catch (IOException | RuntimeException e) {
+            // close() is never called on a failed constructor, so unmap the segments mapped so far, and delete the file.
+            try {
+                MappedFiles.release(file, mappings);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    public int get(long index) {
+        return segments[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & SEGMENT_MASK));
+    }
+
+    public void set(long index, int value) {
+        segments[(int) (index >>> SEGMENT_SHIFT)].put((int) (index & SEGMENT_MASK), value);
+    }
+
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mappings == null)
+            return;
+        // Drop the views first, so a use after close fails instead of touching unmapped memory.
+        MappedByteBuffer[] released = mappings;
+        segments = null;
+        mappings = null;
+        MappedFiles.release(file, released);
+    }
+}
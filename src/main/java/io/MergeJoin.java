@@ -0,0 +1,114 @@
+package io;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.BinaryOperator;
+import java.util.function.ToLongFunction;
+
+/**
+ * Streaming merge-join of two files sorted on the join key. Every record of the left file is matched against the
+ * first record of the right file with an equal key; further right records with the same key are ignored.
+ */
+public class MergeJoin {
+    public enum Type {
+        /** Keep left records with a match. */
+        SEMI,
+        /** Combine left records with their match, dropping left records without one. */
+        INNER,
+        /** Keep left records without a match. */
+        ANTI
+    }
+
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    private final Charset charset;
+    private final ToLongFunction<String> leftKey;
+    private final ToLongFunction<String> rightKey;
+    private BinaryOperator<String> combiner = (left, right) -> left;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private long matched;
+    private long unmatched;
+
+    /**
+     * Both files must be sorted in ascending order of their keys.
+     * @param leftKey extracts the join key of a left record.
+     * @param rightKey extracts the join key of a right record.
+     */
+    public MergeJoin(Charset charset, ToLongFunction<String> leftKey, ToLongFunction<String> rightKey) {
+        this.charset = charset;
+        this.leftKey = leftKey;
+        this.rightKey = rightKey;
+    }
+
+    /**
+     * Joins left with right, and writes the result to output.
+     * @return path to the output file.
+     */
+    public Path join(Path left, Path right, Path output, Type type) throws IOException {
+        matched = 0;
+        unmatched = 0;
+        try (BufferedReader leftReader = newReader(left);
+             BufferedReader rightReader = newReader(right);
+             BufferedWriter writer = FileUtility.newAsyncWriter(output, charset)) {
+            String rightLine = rightReader.readLine();
+            long rightValue = rightLine == null ? 0 : rightKey.applyAsLong(rightLine);
+            String leftLine;
+            while ((leftLine = leftReader.readLine()) != null) {
+                long leftValue = leftKey.applyAsLong(leftLine);
+                while (rightLine != null && Long.compare(leftValue, rightValue) > 0) {
+                    rightLine = rightReader.readLine();
+                    if (rightLine != null)
+                        rightValue = rightKey.applyAsLong(rightLine);
+                }
+                boolean isMatch = rightLine != null && Long.compare(leftValue, rightValue) == 0;
+                if (isMatch)
+                    matched++;
+                else
+                    unmatched++;
+                String entry = switch (type) {
+                    case SEMI -> isMatch ? leftLine : null;
+                    case INNER -> isMatch ? combiner.apply(leftLine, rightLine) : null;
+                    case ANTI -> isMatch ? null : leftLine;
+                };
+                if (entry != null) {
+                    writer.write(entry);
+                    writer.newLine();
+                }
+            }
+        }
+        return output;
+    }
+
+    private BufferedReader newReader(Path path) throws IOException {
+        return new BufferedReader(new InputStreamReader(Files.newInputStream(path), charset), bufferSize);
+    }
+
+    /**
+     * Sets how an inner join combines a left record with its match. Defaults to keeping the left record.
+     */
+    public void setCombiner(BinaryOperator<String> combiner) {
+        this.combiner = combiner;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @return number of left records with a match in the last join.
+     */
+    public long getMatched() {
+        return matched;
+    }
+
+    /**
+     * @return number of left records without a match in the last join.
+     */
+    public long getUnmatched() {
+        return unmatched;
+    }
+}
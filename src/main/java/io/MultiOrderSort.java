@@ -0,0 +1,73 @@
+package io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Sorted batches of one input in several orders, as produced by {@link FileSorter#externalSort(Path, List)}.
+ * Each order is merged into a sorted file when it is first requested, or passed straight to a consumer.
+ */
+public class MultiOrderSort implements Closeable {
+    private final FileSorter sorter;
+    private final Path input;
+    private final List<Comparator<String>> orders;
+    private final List<List<SortedBatch>> sortedBatches;
+    private final List<Path> merged;
+    private final boolean[] isMerged;
+
+    MultiOrderSort(FileSorter sorter, Path input, List<Comparator<String>> orders, List<List<SortedBatch>> sortedBatches) {
+        this.sorter = sorter;
+        this.input = input;
+        this.orders = List.copyOf(orders);
+        this.sortedBatches = sortedBatches;
+        this.merged = new ArrayList<>(orders.size());
+        for (int order = 0; order < orders.size(); order++)
+            merged.add(null);
+        this.isMerged = new boolean[orders.size()];
+    }
+
+    /**
+     * @param order index of the comparator, in the list the sort was started with.
+     * @return path to the input sorted in that order. Repeated calls return the same file.
+     */
+    public Path merge(int order) throws IOException {
+        if (merged.get(order) == null) {
+            if (isMerged[order])
+                throw new IllegalStateException("Order " + order + " was already passed to a consumer");
+            merged.set(order, sorter.mergeSortedBatches(sortedBatches.get(order), input, orders.get(order)));
+            isMerged[order] = true;
+        }
+        return merged.get(order);
+    }
+
+    /**
+     * Passes the input, sorted in the given order, to the consumer as it is merged, without writing a sorted file.
+     * The sorted batches are consumed, so an order can only be merged this way once, and not after it was merged
+     * into a file.
+     * @param order index of the comparator, in the list the sort was started with.
+     */
+    public void merge(int order, LineConsumer output) throws IOException {
+        if (isMerged[order])
+            throw new IllegalStateException("Order " + order + " was already merged");
+        isMerged[order] = true;
+        sorter.mergeSortedBatches(sortedBatches.get(order), orders.get(order), output);
+    }
+
+    /**
+     * Deletes the sorted batches of orders that were never merged. Merged files are kept.
+     */
+    @Override
+    public void close() throws IOException {
+        for (int order = 0; order < orders.size(); order++) {
+            if (isMerged[order])
+                continue;
+            for (SortedBatch sortedBatch : sortedBatches.get(order))
+                Files.deleteIfExists(sortedBatch.file());
+        }
+    }
+}
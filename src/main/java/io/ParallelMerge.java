@@ -0,0 +1,225 @@
+package io;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Merges sorted batches in parallel, by splitting the key space into ranges at splitters drawn from the batches'
+ * samples. Every range is merged into its own segment, and the segments are concatenated with a file level copy, or
+ * read back in order when the lines are consumed right away.
+ */
+class ParallelMerge {
+    private final Comparator<String> comparator;
+    private final Charset charset;
+    private final TempDirectories tempDirectories;
+    private final ExecutorService executor;
+
+    ParallelMerge(Comparator<String> comparator, Charset charset, TempDirectories tempDirectories, ExecutorService executor) {
+        this.comparator = comparator;
+        this.charset = charset;
+        this.tempDirectories = tempDirectories;
+        this.executor = executor;
+    }
+
+    void merge(List<SortedBatch> sortedBatches, Path output, int rangeCount) throws IOException {
+        try (FileChannel target = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            merge(sortedBatches, rangeCount, segment -> append(segment, target));
+        }
+    }
+
+    /**
+     * Passes the merged lines to the consumer in order. Every segment is read back as soon as it is merged, while
+     * later ranges are still being merged.
+     */
+    void merge(List<SortedBatch> sortedBatches, LineConsumer output, int rangeCount) throws IOException {
+        merge(sortedBatches, rangeCount, segment -> FileUtility.forEachLine(segment, charset, output));
+    }
+
+    private void merge(List<SortedBatch> sortedBatches, int rangeCount, SegmentConsumer output) throws IOException {
+        List<String> splitters = chooseSplitters(sortedBatches, rangeCount);
+        // Byte offset of the first line of every range in every batch, plus the end of the batch.
+        long[][] boundaries = new long[sortedBatches.size()][];
+        for (int batch = 0; batch < sortedBatches.size(); batch++)
+            boundaries[batch] = findBoundaries(sortedBatches.get(batch), splitters);
+
+        List<Path> segments = new ArrayList<>();
+        List<Future<Path>> futures = new ArrayList<>();
+        try {
+            for (int range = 0; range <= splitters.size(); range++) {
+                int index = range;
+                futures.add(executor.submit(() -> mergeRange(sortedBatches, boundaries, index)));
+            }
+            // Segments are passed on in key order as they finish, and deleted right after.
+            for (Future<Path> future : futures) {
+                Path segment = await(future);
+                segments.add(segment);
+                output.accept(segment);
+                Files.delete(segment);
+            }
+        } finally {
+            // After a failure, stop the remaining ranges, and collect the segments of ranges that already finished.
+            for (Future<Path> future : futures) {
+                if (!future.cancel(true) && !future.isCancelled()) {
+                    try {
+                        Path segment = future.get();
+                        if (!segments.contains(segment))
+                            segments.add(segment);
+                    } catch (InterruptedException | ExecutionException ignored) {
+                    }
+                }
+            }
+            for (Path segment : segments)
+                Files.deleteIfExists(segment);
+        }
+    }
+
+    private List<String> chooseSplitters(List<SortedBatch> sortedBatches, int rangeCount) {
+        List<String> samples = new ArrayList<>();
+        for (SortedBatch sortedBatch : sortedBatches)
+            samples.addAll(sortedBatch.samples());
+        samples.sort(comparator);
+        List<String> splitters = new ArrayList<>(rangeCount - 1);
+        for (int range = 1; range < rangeCount && !samples.isEmpty(); range++) {
+            String splitter = samples.get((int) ((long) samples.size() * range / rangeCount));
+            // Skip duplicate splitters, which would give empty ranges.
+            if (splitters.isEmpty() || comparator.compare(splitters.get(splitters.size() - 1), splitter) < 0)
+                splitters.add(splitter);
+        }
+        return splitters;
+    }
+
+    /**
+     * Finds the offset of the first line not smaller than each splitter, starting from the closest sample before it.
+     */
+    private long[] findBoundaries(SortedBatch sortedBatch, List<String> splitters) throws IOException {
+        long[] boundaries = new long[splitters.size() + 2];
+        boundaries[splitters.size() + 1] = Files.size(sortedBatch.file());
+        for (int index = 0; index < splitters.size(); index++) {
+            String splitter = splitters.get(index);
+            int sample = Collections.binarySearch(sortedBatch.samples(), splitter, comparator);
+            // Start at the last sample strictly smaller than the splitter. Equal samples may have equal predecessors.
+            int start = (sample >= 0 ? sample : -sample - 1) - 1;
+            while (start >= 0 && comparator.compare(sortedBatch.samples().get(start), splitter) >= 0)
+                start--;
+            long offset = start < 0 ? 0 : sortedBatch.sampleOffsets()[start];
+            try (FileChannel channel = FileChannel.open(sortedBatch.file(), StandardOpenOption.READ);
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel.position(offset)), charset))) {
+                String line;
+                while ((line = reader.readLine()) != null && comparator.compare(line, splitter) < 0)
+                    offset += FileSorter.sizeOnDisk(line, charset);
+            }
+            boundaries[index + 1] = offset;
+        }
+        return boundaries;
+    }
+
+    private Path mergeRange(List<SortedBatch> sortedBatches, long[][] boundaries, int range) throws IOException {
+        Path segment = tempDirectories.createTempFile("sorted_segment", "temporary_file");
+        ReaderQueue readerQueue = new ReaderQueue(comparator);
+        try (BufferedWriter writer = FileUtility.newAsyncWriter(segment, charset)) {
+            try {
+                for (int batch = 0; batch < sortedBatches.size(); batch++) {
+                    long start = boundaries[batch][range];
+                    long end = boundaries[batch][range + 1];
+                    if (start == end)
+                        continue;
+                    FileChannel channel = FileChannel.open(sortedBatches.get(batch).file(), StandardOpenOption.READ).position(start);
+                    InputStream stream = new BoundedInputStream(Channels.newInputStream(channel), end - start);
+                    CachedReader reader = new CachedReader(new BufferedReader(new InputStreamReader(stream, charset)));
+                    if (reader.isEmpty())
+                        reader.close();
+                    else
+                        readerQueue.add(reader);
+                }
+                while (readerQueue.size() > 0) {
+                    CachedReader reader = readerQueue.poll();
+                    writer.write(reader.readLine());
+                    writer.newLine();
+                    if (!reader.isEmpty())
+                        readerQueue.add(reader);
+                    else
+                        reader.close();
+                }
+            } finally {
+                for (CachedReader reader : readerQueue)
+                    reader.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(segment);
+            throw e;
+        }
+        return segment;
+    }
+
+    private static void append(Path segment, FileChannel target) throws IOException {
+        try (FileChannel source = FileChannel.open(segment, StandardOpenOption.READ)) {
+            long size = source.size();
+            long position = 0;
+            while (position < size)
+                position += source.transferTo(position, size - position, target);
+        }
+    }
+
+    private static Path await(Future<Path> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while merging", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause)
+                throw cause;
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private interface SegmentConsumer {
+        void accept(Path segment) throws IOException;
+    }
+
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        private BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0)
+                return -1;
+            int b = in.read();
+            if (b >= 0)
+                remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (remaining <= 0)
+                return -1;
+            int count = in.read(bytes, offset, (int) Math.min(length, remaining));
+            if (count > 0)
+                remaining -= count;
+            return count;
+        }
+    }
+}
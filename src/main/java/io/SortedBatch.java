@@ -0,0 +1,11 @@
+package io;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A sorted run of an external sort. For parallel merging, every few lines are sampled together with their byte
+ * offset in the file; the samples are empty otherwise.
+ */
+record SortedBatch(Path file, List<String> samples, long[] sampleOffsets) {
+}
@@ -0,0 +1,108 @@
+package io;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Places temporary files on a set of directories, ideally on different devices. Files are spread round-robin, so
+ * files written one after the other, such as the runs of an external sort, end up on all devices. Directories with
+ * less usable space than the reserve are skipped, as long as any other directory has enough.
+ */
+public class TempDirectories {
+    public static final long DEFAULT_RESERVE = 1024L * 1024 * 1024;
+    private final List<Path> directories;
+    private final List<FileStore> stores;
+    private long reserve = DEFAULT_RESERVE;
+    private int next;
+
+    public TempDirectories(List<Path> directories) {
+        if (directories.isEmpty())
+            throw new IllegalArgumentException("At least one temporary directory is required");
+        this.directories = List.copyOf(directories);
+        this.stores = new ArrayList<>(directories.size());
+        for (Path directory : directories)
+            stores.add(fileStoreOf(directory));
+    }
+
+    public static TempDirectories of(Path directory) {
+        return new TempDirectories(List.of(directory));
+    }
+
+    /**
+     * Creates a temporary file in the next directory.
+     */
+    public Path createTempFile(String prefix, String suffix) throws IOException {
+        return Files.createTempFile(next(null), prefix, suffix);
+    }
+
+    /**
+     * Creates a temporary file in the next directory that is not on the same device as the given file, so a stage
+     * reading that file does not compete with its own output. Falls back to any directory if there is none.
+     */
+    public Path createTempFile(String prefix, String suffix, Path input) throws IOException {
+        return Files.createTempFile(next(fileStoreOf(input)), prefix, suffix);
+    }
+
+    /**
+     * Picks the next directory on another device with enough space, else the next one on the avoided device with
+     * enough space, else the one with the most usable space.
+     */
+    private synchronized Path next(FileStore avoid) {
+        int start = next;
+        next = (next + 1) % directories.size();
+        Path sameDevice = null;
+        Path mostSpace = null;
+        long mostSpaceAvailable = -1;
+        for (int offset = 0; offset < directories.size(); offset++) {
+            int index = (start + offset) % directories.size();
+            FileStore store = stores.get(index);
+            long space = usableSpaceOf(store);
+            if (space >= reserve) {
+                if (avoid == null || !avoid.equals(store)) {
+                    next = (index + 1) % directories.size();
+                    return directories.get(index);
+                }
+                if (sameDevice == null)
+                    sameDevice = directories.get(index);
+            }
+            if (space > mostSpaceAvailable) {
+                mostSpace = directories.get(index);
+                mostSpaceAvailable = space;
+            }
+        }
+        return sameDevice != null ? sameDevice : mostSpace;
+    }
+
+    private static FileStore fileStoreOf(Path path) {
+        try {
+            return Files.getFileStore(path);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static long usableSpaceOf(FileStore store) {
+        if (store == null)
+            return Long.MAX_VALUE;
+        try {
+            return store.getUsableSpace();
+        } catch (IOException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    public List<Path> getDirectories() {
+        return directories;
+    }
+
+    /**
+     * Sets how much usable space a directory must have left to be chosen in turn. Defaults to 1 GiB.
+     */
+    public void setReserve(long reserve) {
+        this.reserve = reserve;
+    }
+}
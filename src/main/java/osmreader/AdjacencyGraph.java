@@ -0,0 +1,100 @@
+package osmreader;
+
+import io.FileUtility;
+import io.MappedIntArray;
+import io.MappedLongArray;
+import io.TempDirectories;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.ToLongFunction;
+
+/**
+ * Directed graph over dense node IDs in compressed sparse row layout, kept in memory mapped files so it does not
+ * need to fit in the heap. The edges of node v are found from index firstEdge(v) (inclusive) to firstEdge(v+1)
+ * (exclusive).
+ */
+public class AdjacencyGraph implements Closeable {
+    private final int nodeCount;
+    private final MappedLongArray offsets;
+    private final MappedIntArray targets;
+
+    private AdjacencyGraph(int nodeCount, MappedLongArray offsets, MappedIntArray targets) {
+        this.nodeCount = nodeCount;
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    /**
+     * Builds the graph from an edge file sorted by origin.
+     */
+    public static AdjacencyGraph fromSortedEdges(Path edges, Charset charset, int nodeCount, TempDirectories tempFiles) throws IOException {
+        return fromSortedEdges(edges, charset, nodeCount, tempFiles, 0);
+    }
+
+    /**
+     * Builds the graph from an edge file sorted by the given column, which becomes the source of every edge. With
+     * column one, an edge file sorted by destination gives the reverse graph.
+     */
+    public static AdjacencyGraph fromSortedEdges(Path edges, Charset charset, int nodeCount, TempDirectories tempFiles, int sourceColumn) throws IOException {
+        long edgeCount;
+        try (BufferedReader reader = Files.newBufferedReader(edges, charset)) {
+            edgeCount = reader.lines().count();
+        }
+        ToLongFunction<String> source = FileUtility.longColumn(sourceColumn);
+        ToLongFunction<String> target = FileUtility.longColumn(1 - sourceColumn);
+        MappedLongArray offsets = new MappedLongArray(tempFiles.createTempFile("graph", "offsets"), nodeCount + 1L);
+        MappedIntArray targets = new MappedIntArray(tempFiles.createTempFile("graph", "targets"), edgeCount);
+        try (BufferedReader reader = Files.newBufferedReader(edges, charset)) {
+            int previous = 0;
+            long edge = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int node = (int) source.applyAsLong(line);
+                if (node < previous)
+                    throw new IllegalArgumentException("Edges are not sorted by column " + sourceColumn + ": " + edges);
+                // Close the edge ranges of all nodes up to this one.
+                for (int index = previous + 1; index <= node; index++)
+                    offsets.set(index, edge);
+                previous = node;
+                targets.set(edge++, (int) target.applyAsLong(line));
+            }
+            for (int index = previous + 1; index <= nodeCount; index++)
+                offsets.set(index, edge);
+        } catch (RuntimeException | IOException e) {
+            offsets.close();
+            targets.close();
+            throw e;
+        }
+        return new AdjacencyGraph(nodeCount, offsets, targets);
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public long edgeCount() {
+        return targets.length();
+    }
+
+    public long firstEdge(int node) {
+        return offsets.get(node);
+    }
+
+    public int target(long edge) {
+        return targets.get(edge);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            offsets.close();
+        } finally {
+            targets.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package osmreader;
+
+import java.util.Arrays;
+
+/**
+ * Collects the graph in primitive arrays. Node attributes are indexed by node ID, edges are kept in the order they
+ * were received, which is sorted by origin. Component flags are kept when the nodes carry them.
+ */
+public class ArrayGraphSink implements GraphSink {
+    private long[] osmIds = new long[1024];
+    private double[] latitudes = new double[1024];
+    private double[] longitudes = new double[1024];
+    private boolean[] smallComponents = new boolean[1024];
+    private int[] origins = new int[1024];
+    private int[] destinations = new int[1024];
+    private int nodeCount;
+    private int edgeCount;
+
+    @Override
+    public void node(long id, long osmId, double lat, double lon) {
+        int index = Math.toIntExact(id);
+        if (index >= osmIds.length) {
+            int capacity = Math.max(index + 1, osmIds.length * 2);
+            osmIds = Arrays.copyOf(osmIds, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            smallComponents = Arrays.copyOf(smallComponents, capacity);
+        }
+        osmIds[index] = osmId;
+        latitudes[index] = lat;
+        longitudes[index] = lon;
+        nodeCount = Math.max(nodeCount, index + 1);
+    }
+
+    @Override
+    public void node(long id, long osmId, double lat, double lon, boolean smallComponent) {
+        node(id, osmId, lat, lon);
+        smallComponents[Math.toIntExact(id)] = smallComponent;
+    }
+
+    @Override
+    public void edge(long origin, long destination) {
+        if (edgeCount == origins.length) {
+            origins = Arrays.copyOf(origins, edgeCount * 2);
+            destinations = Arrays.copyOf(destinations, edgeCount * 2);
+        }
+        origins[edgeCount] = Math.toIntExact(origin);
+        destinations[edgeCount] = Math.toIntExact(destination);
+        edgeCount++;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public long[] getOsmIds() {
+        return Arrays.copyOf(osmIds, nodeCount);
+    }
+
+    public double[] getLatitudes() {
+        return Arrays.copyOf(latitudes, nodeCount);
+    }
+
+    public double[] getLongitudes() {
+        return Arrays.copyOf(longitudes, nodeCount);
+    }
+
+    /**
+     * @return for every node, whether component pruning flagged it as part of a small component.
+     */
+    public boolean[] getSmallComponentFlags() {
+        return Arrays.copyOf(smallComponents, nodeCount);
+    }
+
+    public int[] getOrigins() {
+        return Arrays.copyOf(origins, edgeCount);
+    }
+
+    public int[] getDestinations() {
+        return Arrays.copyOf(destinations, edgeCount);
+    }
+
+    /**
+     * Offsets of the outgoing edges of every node, in compressed sparse row layout: the edges of node i are found
+     * from index offsets[i] (inclusive) to offsets[i+1] (exclusive) of {@link #getDestinations()}.
+     */
+    public int[] getEdgeOffsets() {
+        int[] offsets = new int[nodeCount + 1];
+        for (int index = 0; index < edgeCount; index++)
+            offsets[origins[index] + 1]++;
+        for (int index = 0; index < nodeCount; index++)
+            offsets[index + 1] += offsets[index];
+        return offsets;
+    }
+}
@@ -0,0 +1,66 @@
+package osmreader;
+
+import io.AsyncOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Writes the graph as fixed size, big-endian records to "nodes.bin" and "edges.bin" in an output directory.
+ * A node record holds the node ID (int), the OSM ID (long), latitude and longitude (double), 28 bytes in total.
+ * An edge record holds origin and destination (int), 8 bytes in total. Component flags, when the nodes carry them,
+ * are written to "flags.bin", one byte per node in node order, which is 1 for nodes of small components.
+ */
+public class BinaryGraphSink implements GraphSink {
+    public static final int NODE_RECORD_SIZE = Integer.BYTES + Long.BYTES + 2 * Double.BYTES;
+    public static final int EDGE_RECORD_SIZE = 2 * Integer.BYTES;
+    private final DataOutputStream nodeStream;
+    private final DataOutputStream edgeStream;
+    private final Path flagsPath;
+    private DataOutputStream flagStream;
+
+    public BinaryGraphSink(Path outputDirectory) throws IOException {
+        this.flagsPath = Paths.get(outputDirectory.toString(), "flags.bin");
+        this.nodeStream = new DataOutputStream(new BufferedOutputStream(new AsyncOutputStream(Paths.get(outputDirectory.toString(), "nodes.bin"))));
+        this.edgeStream = new DataOutputStream(new BufferedOutputStream(new AsyncOutputStream(Paths.get(outputDirectory.toString(), "edges.bin"))));
+    }
+
+    @Override
+    public void node(long id, long osmId, double lat, double lon) throws IOException {
+        nodeStream.writeInt(Math.toIntExact(id));
+        nodeStream.writeLong(osmId);
+        nodeStream.writeDouble(lat);
+        nodeStream.writeDouble(lon);
+    }
+
+    @Override
+    public void node(long id, long osmId, double lat, double lon, boolean smallComponent) throws IOException {
+        node(id, osmId, lat, lon);
+        if (flagStream == null)
+            flagStream = new DataOutputStream(new BufferedOutputStream(new AsyncOutputStream(flagsPath)));
+        flagStream.writeBoolean(smallComponent);
+    }
+
+    @Override
+    public void edge(long origin, long destination) throws IOException {
+        edgeStream.writeInt(Math.toIntExact(origin));
+        edgeStream.writeInt(Math.toIntExact(destination));
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            nodeStream.close();
+        } finally {
+            try {
+                edgeStream.close();
+            } finally {
+                if (flagStream != null)
+                    flagStream.close();
+            }
+        }
+    }
+}
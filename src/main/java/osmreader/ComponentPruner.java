@@ -0,0 +1,205 @@
+package osmreader;
+
+import io.FileUtility;
+import io.LineConsumer;
+import io.MappedIntArray;
+import io.TempDirectories;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Finds the strongly connected components of the translated graph, and drops or flags the nodes of components
+ * smaller than a threshold. Components are found with an iterative version of Tarjan's algorithm, whose state is
+ * kept in memory mapped arrays, so neither the graph nor the recursion has to fit in the heap or on the stack.
+ */
+public class ComponentPruner {
+    public enum Mode {
+        /** Remove nodes of small components, and edges touching them, and renumber the remaining nodes densely. */
+        DROP,
+        /** Keep all nodes and edges, but append a column to every node, which is 1 for nodes of small components. */
+        FLAG
+    }
+
+    private final int minimumSize;
+    private final Mode mode;
+    private final Charset charset;
+    private final TempDirectories tempFiles;
+    private int componentCount;
+    private int prunedNodeCount;
+
+    public ComponentPruner(int minimumSize, Mode mode, Charset charset, TempDirectories tempFiles) {
+        this.minimumSize = minimumSize;
+        this.mode = mode;
+        this.charset = charset;
+        this.tempFiles = tempFiles;
+    }
+
+    /**
+     * Prunes the graph.
+     * @param nodes node file with lines "id,..." and dense IDs from zero to nodeCount, in any order.
+     * @param edges edge file with lines "origin,destination", sorted by origin.
+     * @return the pruned node and edge files. Their order is the order of the input files.
+     */
+    public Path[] prune(Path nodes, Path edges, int nodeCount) throws IOException {
+        try (MappedIntArray newIDs = findNewIDs(edges, nodeCount)) {
+            Path prunedNodes = tempFiles.createTempFile("tmp", mode == Mode.DROP ? "pruned" : "flagged", nodes);
+            try (BufferedWriter writer = FileUtility.newAsyncWriter(prunedNodes, charset)) {
+                pruneNodes(nodes, newIDs, FileUtility.lineConsumer(writer));
+            }
+            if (mode == Mode.FLAG)
+                return new Path[]{prunedNodes, edges};
+            Path prunedEdges = tempFiles.createTempFile("tmp", "pruned", edges);
+            try (BufferedWriter writer = FileUtility.newAsyncWriter(prunedEdges, charset)) {
+                dropEdges(edges, newIDs, FileUtility.lineConsumer(writer));
+            }
+            return new Path[]{prunedNodes, prunedEdges};
+        }
+    }
+
+    /**
+     * Prunes the graph, and passes the pruned nodes and then the pruned edges to the consumers, in the order of the
+     * input files, without writing them to files.
+     */
+    public void prune(Path nodes, Path edges, int nodeCount, LineConsumer nodeOutput, LineConsumer edgeOutput) throws IOException {
+        try (MappedIntArray newIDs = findNewIDs(edges, nodeCount)) {
+            pruneNodes(nodes, newIDs, nodeOutput);
+            if (mode == Mode.DROP)
+                dropEdges(edges, newIDs, edgeOutput);
+            else
+                FileUtility.forEachLine(edges, charset, edgeOutput);
+        }
+    }
+
+    /**
+     * @return new ID plus one for kept nodes, zero for pruned nodes. Kept nodes retain their relative order.
+     */
+    private MappedIntArray findNewIDs(Path edges, int nodeCount) throws IOException {
+        MappedIntArray newIDs = new MappedIntArray(tempFiles.createTempFile("scc", "ids"), nodeCount);
+        try (AdjacencyGraph graph = AdjacencyGraph.fromSortedEdges(edges, charset, nodeCount, tempFiles);
+             MappedIntArray components = findComponents(graph);
+             MappedIntArray sizes = new MappedIntArray(tempFiles.createTempFile("scc", "sizes"), componentCount + 1L)) {
+            for (int node = 0; node < nodeCount; node++) {
+                int component = components.get(node);
+                sizes.set(component, sizes.get(component) + 1);
+            }
+            int nextID = 0;
+            for (int node = 0; node < nodeCount; node++) {
+                if (sizes.get(components.get(node)) >= minimumSize)
+                    newIDs.set(node, ++nextID);
+            }
+            prunedNodeCount = nodeCount - nextID;
+        } catch (IOException | RuntimeException e) {
+            newIDs.close();
+            throw e;
+        }
+        return newIDs;
+    }
+
+    /**
+     * Labels every node with a component number from one upwards, using Tarjan's algorithm with an explicit call
+     * stack. A node is visited when it has a DFS index, and still on the Tarjan stack until it has a component.
+     */
+    private MappedIntArray findComponents(AdjacencyGraph graph) throws IOException {
+        int nodeCount = graph.nodeCount();
+        MappedIntArray components = new MappedIntArray(tempFiles.createTempFile("scc", "components"), nodeCount);
+        try (MappedIntArray index = new MappedIntArray(tempFiles.createTempFile("scc", "index"), nodeCount);
+             MappedIntArray lowLink = new MappedIntArray(tempFiles.createTempFile("scc", "low"), nodeCount);
+             MappedIntArray cursor = new MappedIntArray(tempFiles.createTempFile("scc", "cursor"), nodeCount);
+             MappedIntArray tarjanStack = new MappedIntArray(tempFiles.createTempFile("scc", "stack"), nodeCount);
+             MappedIntArray callStack = new MappedIntArray(tempFiles.createTempFile("scc", "calls"), nodeCount)) {
+            int counter = 0;
+            int tarjanSize = 0;
+            int callSize = 0;
+            componentCount = 0;
+            for (int root = 0; root < nodeCount; root++) {
+                if (index.get(root) != 0)
+                    continue;
+                index.set(root, ++counter);
+                lowLink.set(root, counter);
+                tarjanStack.set(tarjanSize++, root);
+                callStack.set(callSize++, root);
+                while (callSize > 0) {
+                    int node = callStack.get(callSize - 1);
+                    long edge = graph.firstEdge(node) + cursor.get(node);
+                    if (edge < graph.firstEdge(node + 1)) {
+                        cursor.set(node, cursor.get(node) + 1);
+                        int target = graph.target(edge);
+                        if (index.get(target) == 0) {
+                            index.set(target, ++counter);
+                            lowLink.set(target, counter);
+                            tarjanStack.set(tarjanSize++, target);
+                            callStack.set(callSize++, target);
+                        } else if (components.get(target) == 0) {
+                            lowLink.set(node, Math.min(lowLink.get(node), index.get(target)));
+                        }
+                        continue;
+                    }
+                    callSize--;
+                    if (lowLink.get(node) == index.get(node)) {
+                        componentCount++;
+                        int member;
+                        do {
+                            member = tarjanStack.get(--tarjanSize);
+                            components.set(member, componentCount);
+                        } while (member != node);
+                    }
+                    if (callSize > 0) {
+                        int parent = callStack.get(callSize - 1);
+                        lowLink.set(parent, Math.min(lowLink.get(parent), lowLink.get(node)));
+                    }
+                }
+            }
+        } catch (RuntimeException | IOException e) {
+            components.close();
+            throw e;
+        }
+        return components;
+    }
+
+    private void pruneNodes(Path nodes, MappedIntArray newIDs, LineConsumer output) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(nodes, charset)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf(',');
+                int newID = newIDs.get(Long.parseLong(line, 0, separator, 10));
+                if (mode == Mode.FLAG)
+                    output.accept(line + (newID == 0 ? ",1" : ",0"));
+                else if (newID != 0)
+                    output.accept((newID - 1) + line.substring(separator));
+            }
+        }
+    }
+
+    private void dropEdges(Path edges, MappedIntArray newIDs, LineConsumer output) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(edges, charset)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf(',');
+                int origin = newIDs.get(Long.parseLong(line, 0, separator, 10));
+                int destination = newIDs.get(Long.parseLong(line, separator + 1, line.length(), 10));
+                if (origin == 0 || destination == 0)
+                    continue;
+                output.accept((origin - 1) + "," + (destination - 1));
+            }
+        }
+    }
+
+    /**
+     * @return number of strongly connected components found by the last call to prune.
+     */
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    /**
+     * @return number of nodes in components below the minimum size, found by the last call to prune.
+     */
+    public int getPrunedNodeCount() {
+        return prunedNodeCount;
+    }
+}
@@ -0,0 +1,233 @@
+package osmreader;
+
+import io.FileSorter;
+import io.FileUtility;
+import io.LineConsumer;
+import io.MappedIntArray;
+import io.TempDirectories;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Renumbers the nodes of the translated graph in graph traversal order, so neighbours get nearby IDs. Edges are
+ * followed in both directions. Connected parts of the graph are taken in order of their lowest current ID. Breadth
+ * first order places them in that order, so the {@link IDStrategy} order still decides where each part is placed.
+ * Reverse Cuthill-McKee reverses the whole order, so the parts come out in reverse, and the part holding the node
+ * with the lowest current ID gets the highest new IDs. The graph and all traversal state are kept in memory mapped
+ * arrays.
+ */
+public class GraphRenumberer {
+    public enum Ordering {
+        /** Keep the order of the {@link IDStrategy}. */
+        ID_STRATEGY,
+        /** Number nodes in breadth first order. */
+        BREADTH_FIRST,
+        /**
+         * Number nodes in reverse Cuthill-McKee order: breadth first from a peripheral node, visiting neighbours
+         * by increasing degree, with the final order reversed.
+         */
+        REVERSE_CUTHILL_MCKEE
+    }
+
+    private final Ordering ordering;
+    private final FileSorter sorter;
+    private final Charset charset;
+    private final TempDirectories tempFiles;
+
+    public GraphRenumberer(Ordering ordering, FileSorter sorter, Charset charset, TempDirectories tempFiles) {
+        this.ordering = ordering;
+        this.sorter = sorter;
+        this.charset = charset;
+        this.tempFiles = tempFiles;
+    }
+
+    /**
+     * Renumbers the graph.
+     * @param nodes node file with lines "id,..." and dense IDs from zero to nodeCount, in any order.
+     * @param edgesByOrigin edge file with lines "origin,destination", sorted by origin.
+     * @param edgesByDestination the same edges, sorted by destination.
+     * @return the renumbered node file, in the order of the input, and the renumbered edges, sorted by origin.
+     */
+    public Path[] renumber(Path nodes, Path edgesByOrigin, Path edgesByDestination, int nodeCount) throws IOException {
+        if (ordering == Ordering.ID_STRATEGY)
+            return new Path[]{nodes, edgesByOrigin};
+        try (MappedIntArray newIDs = findNewIDs(edgesByOrigin, edgesByDestination, nodeCount)) {
+            Path renumberedNodes = renumberNodes(nodes, newIDs);
+            Path renumberedEdges = renumberEdges(edgesByOrigin, newIDs);
+            sorter.setLineComparator(Comparator.comparingLong(FileUtility.longColumn(0)));
+            return new Path[]{renumberedNodes, sorter.externalSort(renumberedEdges)};
+        }
+    }
+
+    /**
+     * Renumbers the graph, and passes the renumbered nodes, sorted by new ID, and then the renumbered edges, sorted
+     * by origin, to the consumers as they come out of the final merges. With {@link Ordering#ID_STRATEGY}, the input
+     * files are passed on as they are.
+     */
+    public void renumber(Path nodes, Path edgesByOrigin, Path edgesByDestination, int nodeCount, LineConsumer nodeOutput, LineConsumer edgeOutput) throws IOException {
+        if (ordering == Ordering.ID_STRATEGY) {
+            FileUtility.forEachLine(nodes, charset, nodeOutput);
+            FileUtility.forEachLine(edgesByOrigin, charset, edgeOutput);
+            return;
+        }
+        try (MappedIntArray newIDs = findNewIDs(edgesByOrigin, edgesByDestination, nodeCount)) {
+            Path renumberedNodes = renumberNodes(nodes, newIDs);
+            Path renumberedEdges = renumberEdges(edgesByOrigin, newIDs);
+            sorter.setLineComparator(Comparator.comparingLong(FileUtility.longColumn(0)));
+            sorter.externalSort(renumberedNodes, nodeOutput);
+            sorter.externalSort(renumberedEdges, edgeOutput);
+        }
+    }
+
+    /**
+     * @return new ID of every node, indexed by current ID.
+     */
+    private MappedIntArray findNewIDs(Path edgesByOrigin, Path edgesByDestination, int nodeCount) throws IOException {
+        MappedIntArray newIDs = new MappedIntArray(tempFiles.createTempFile("order", "ids"), nodeCount);
+        try (AdjacencyGraph forward = AdjacencyGraph.fromSortedEdges(edgesByOrigin, charset, nodeCount, tempFiles);
+             AdjacencyGraph backward = AdjacencyGraph.fromSortedEdges(edgesByDestination, charset, nodeCount, tempFiles, 1)) {
+            if (ordering == Ordering.BREADTH_FIRST)
+                breadthFirst(forward, backward, newIDs);
+            else
+                reverseCuthillMcKee(forward, backward, newIDs);
+        } catch (IOException | RuntimeException e) {
+            newIDs.close();
+            throw e;
+        }
+        return newIDs;
+    }
+
+    private void breadthFirst(AdjacencyGraph forward, AdjacencyGraph backward, MappedIntArray newIDs) throws IOException {
+        int nodeCount = forward.nodeCount();
+        try (MappedIntArray queue = new MappedIntArray(tempFiles.createTempFile("order", "queue"), nodeCount);
+             MappedIntArray visited = new MappedIntArray(tempFiles.createTempFile("order", "visited"), nodeCount)) {
+            int tail = 0;
+            for (int root = 0; root < nodeCount; root++) {
+                if (visited.get(root) != 0)
+                    continue;
+                visited.set(root, 1);
+                queue.set(tail++, root);
+                tail = traverse(forward, backward, queue, visited, tail - 1, tail, 1, false);
+            }
+            for (int position = 0; position < nodeCount; position++)
+                newIDs.set(queue.get(position), position);
+        }
+    }
+
+    /**
+     * A first breadth first pass finds the last node reached in every connected part, which lies far from where
+     * the pass started. The second pass starts from those nodes and visits neighbours by increasing degree.
+     */
+    private void reverseCuthillMcKee(AdjacencyGraph forward, AdjacencyGraph backward, MappedIntArray newIDs) throws IOException {
+        int nodeCount = forward.nodeCount();
+        try (MappedIntArray queue = new MappedIntArray(tempFiles.createTempFile("order", "queue"), nodeCount);
+             MappedIntArray starts = new MappedIntArray(tempFiles.createTempFile("order", "starts"), nodeCount);
+             MappedIntArray visited = new MappedIntArray(tempFiles.createTempFile("order", "visited"), nodeCount)) {
+            int tail = 0;
+            int startCount = 0;
+            for (int root = 0; root < nodeCount; root++) {
+                if (visited.get(root) != 0)
+                    continue;
+                visited.set(root, 1);
+                queue.set(tail++, root);
+                tail = traverse(forward, backward, queue, visited, tail - 1, tail, 1, false);
+                starts.set(startCount++, queue.get(tail - 1));
+            }
+            tail = 0;
+            for (int index = 0; index < startCount; index++) {
+                int start = starts.get(index);
+                if (visited.get(start) == 2)
+                    continue;
+                visited.set(start, 2);
+                queue.set(tail++, start);
+                tail = traverse(forward, backward, queue, visited, tail - 1, tail, 2, true);
+            }
+            for (int position = 0; position < nodeCount; position++)
+                newIDs.set(queue.get(position), nodeCount - 1 - position);
+        }
+    }
+
+    /**
+     * Visits everything reachable from the queue entries from head onwards, ignoring edge directions, and marks
+     * visited nodes with the given mark.
+     * @return the new tail of the queue.
+     */
+    private int traverse(AdjacencyGraph forward, AdjacencyGraph backward, MappedIntArray queue, MappedIntArray visited,
+                         int head, int tail, int mark, boolean byDegree) {
+        int[] neighbours = new int[16];
+        while (head < tail) {
+            int node = queue.get(head++);
+            long forwardStart = forward.firstEdge(node);
+            long backwardStart = backward.firstEdge(node);
+            int forwardDegree = (int) (forward.firstEdge(node + 1) - forwardStart);
+            int degree = forwardDegree + (int) (backward.firstEdge(node + 1) - backwardStart);
+            if (degree > neighbours.length)
+                neighbours = new int[Math.max(degree, neighbours.length * 2)];
+            int count = 0;
+            for (int index = 0; index < degree; index++) {
+                int neighbour = index < forwardDegree
+                        ? forward.target(forwardStart + index)
+                        : backward.target(backwardStart + index - forwardDegree);
+                if (visited.get(neighbour) != mark) {
+                    visited.set(neighbour, mark);
+                    neighbours[count++] = neighbour;
+                }
+            }
+            if (byDegree)
+                sortByDegree(forward, backward, neighbours, count);
+            for (int index = 0; index < count; index++)
+                queue.set(tail++, neighbours[index]);
+        }
+        return tail;
+    }
+
+    private static void sortByDegree(AdjacencyGraph forward, AdjacencyGraph backward, int[] nodes, int count) {
+        // Degree and ID are packed into one key, so a primitive sort orders by degree, with ties broken by ID.
+        long[] keys = new long[count];
+        for (int index = 0; index < count; index++) {
+            int node = nodes[index];
+            long degree = forward.firstEdge(node + 1) - forward.firstEdge(node) + backward.firstEdge(node + 1) - backward.firstEdge(node);
+            keys[index] = (degree << 32) | node;
+        }
+        Arrays.sort(keys);
+        for (int index = 0; index < count; index++)
+            nodes[index] = (int) keys[index];
+    }
+
+    private Path renumberNodes(Path nodes, MappedIntArray newIDs) throws IOException {
+        Path output = tempFiles.createTempFile("tmp", "renumbered", nodes);
+        try (BufferedReader reader = Files.newBufferedReader(nodes, charset);
+             BufferedWriter writer = FileUtility.newAsyncWriter(output, charset)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf(',');
+                writer.write(newIDs.get(Long.parseLong(line, 0, separator, 10)) + line.substring(separator));
+                writer.newLine();
+            }
+        }
+        return output;
+    }
+
+    private Path renumberEdges(Path edges, MappedIntArray newIDs) throws IOException {
+        Path output = tempFiles.createTempFile("tmp", "renumbered", edges);
+        try (BufferedReader reader = Files.newBufferedReader(edges, charset);
+             BufferedWriter writer = FileUtility.newAsyncWriter(output, charset)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf(',');
+                int origin = newIDs.get(Long.parseLong(line, 0, separator, 10));
+                int destination = newIDs.get(Long.parseLong(line, separator + 1, line.length(), 10));
+                writer.write(origin + "," + destination);
+                writer.newLine();
+            }
+        }
+        return output;
+    }
+}
@@ -0,0 +1,51 @@
+package osmreader;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the final graph of a translation. Nodes are delivered before edges, and edges are sorted by origin.
+ * The translator passes every node and edge on as it comes out of the last pass over the graph, so no file of the
+ * final graph is written unless the sink writes one.
+ */
+public interface GraphSink extends Closeable {
+
+    void node(long id, long osmId, double lat, double lon) throws IOException;
+
+    /**
+     * Receives a node with the flag added by {@link ComponentPruner.Mode#FLAG}, which is true for nodes of small
+     * components.
+     */
+    void node(long id, long osmId, double lat, double lon, boolean smallComponent) throws IOException;
+
+    void edge(long origin, long destination) throws IOException;
+
+    /**
+     * Receives a node as the translator holds it, a line of the form "id,osmId,lat,lon", and passes it on as a
+     * record. A fifth column carries the component flag, which is 1 for nodes of small components. Sinks writing
+     * text may keep the line as it is.
+     */
+    default void nodeLine(String line) throws IOException {
+        String[] splitLine = line.split(",");
+        long id = Long.parseLong(splitLine[0]);
+        long osmId = Long.parseLong(splitLine[1]);
+        double lat = Double.parseDouble(splitLine[2]);
+        double lon = Double.parseDouble(splitLine[3]);
+        if (splitLine.length > 4)
+            node(id, osmId, lat, lon, splitLine[4].equals("1"));
+        else
+            node(id, osmId, lat, lon);
+    }
+
+    /**
+     * Receives an edge as a line of the form "origin,destination", and passes it on as a record.
+     */
+    default void edgeLine(String line) throws IOException {
+        int separator = line.indexOf(',');
+        edge(Long.parseLong(line, 0, separator, 10), Long.parseLong(line, separator + 1, line.length(), 10));
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,155 @@
+package osmreader;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compressed set of OSM node IDs, organised like a roaring bitmap: IDs are grouped by their upper 48 bits, and each
+ * group stores its lower 16 bits either as a sorted array (sparse groups) or as a 65536 bit bitmap (dense groups).
+ * The heap footprint of the set counts every container, the growth of sorted arrays, and the map entry of every
+ * group. Once it exceeds the given limit, new bitmaps are allocated off-heap; sorted arrays and map entries are
+ * always kept on the heap.
+ */
+public class NodeIdSet {
+    private static final int ARRAY_CONTAINER_LIMIT = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+    // Estimated with compressed references: a hash map node, the boxed key and a share of the table.
+    private static final long ENTRY_BYTES = 64;
+    // Object headers and fields of a container, plus the header of its array or buffer.
+    private static final long CONTAINER_BYTES = 40;
+    private final Map<Long, Container> containers = new HashMap<>();
+    private final long heapLimit;
+    private long heapBytes;
+    private long size;
+    private long lastKey = Long.MIN_VALUE;
+    private Container lastContainer;
+
+    public NodeIdSet(long heapLimit) {
+        this.heapLimit = heapLimit;
+    }
+
+    public void add(long id) {
+        long key = id >>> 16;
+        char low = (char) id;
+        Container container = containerFor(key);
+        if (container == null) {
+            container = new ArrayContainer();
+            containers.put(key, container);
+            cache(key, container);
+            heapBytes += ENTRY_BYTES + container.heapBytes();
+        }
+        long containerBytes = container.heapBytes();
+        if (!container.add(low))
+            return;
+        size++;
+        heapBytes += container.heapBytes() - containerBytes;
+        if (container instanceof ArrayContainer array && array.cardinality >= ARRAY_CONTAINER_LIMIT) {
+            BitmapContainer bitmap = new BitmapContainer(heapBytes >= heapLimit);
+            for (int index = 0; index < array.cardinality; index++)
+                bitmap.add(array.values[index]);
+            heapBytes += bitmap.heapBytes() - array.heapBytes();
+            containers.put(key, bitmap);
+            cache(key, bitmap);
+        }
+    }
+
+    public boolean contains(long id) {
+        Container container = containerFor(id >>> 16);
+        return container != null && container.contains((char) id);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return estimated heap footprint of the set in bytes.
+     */
+    public long heapBytes() {
+        return heapBytes;
+    }
+
+    private Container containerFor(long key) {
+        // Way node references and node IDs are mostly clustered, so consecutive lookups tend to hit the same group.
+        if (key == lastKey)
+            return lastContainer;
+        Container container = containers.get(key);
+        if (container != null)
+            cache(key, container);
+        return container;
+    }
+
+    private void cache(long key, Container container) {
+        lastKey = key;
+        lastContainer = container;
+    }
+
+    private interface Container {
+        boolean add(char value);
+        boolean contains(char value);
+        long heapBytes();
+    }
+
+    private static class ArrayContainer implements Container {
+        private char[] values = new char[4];
+        private int cardinality;
+
+        @Override
+        public boolean add(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0)
+                return false;
+            int insertion = -index - 1;
+            if (cardinality == values.length)
+                values = Arrays.copyOf(values, Math.min(values.length * 2, ARRAY_CONTAINER_LIMIT));
+            System.arraycopy(values, insertion, values, insertion + 1, cardinality - insertion);
+            values[insertion] = value;
+            cardinality++;
+            return true;
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        public long heapBytes() {
+            return CONTAINER_BYTES + (long) values.length * Character.BYTES;
+        }
+    }
+
+    private static class BitmapContainer implements Container {
+        private final LongBuffer words;
+        private final boolean offHeap;
+
+        private BitmapContainer(boolean offHeap) {
+            this.offHeap = offHeap;
+            this.words = offHeap ? ByteBuffer.allocateDirect(BITMAP_WORDS * Long.BYTES).asLongBuffer() : LongBuffer.allocate(BITMAP_WORDS);
+        }
+
+        @Override
+        public boolean add(char value) {
+            int index = value >>> 6;
+            long word = words.get(index);
+            long updated = word | (1L << value);
+            if (updated == word)
+                return false;
+            words.put(index, updated);
+            return true;
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return (words.get(value >>> 6) & (1L << value)) != 0;
+        }
+
+        @Override
+        public long heapBytes() {
+            return offHeap ? CONTAINER_BYTES : CONTAINER_BYTES + BITMAP_WORDS * Long.BYTES;
+        }
+    }
+}
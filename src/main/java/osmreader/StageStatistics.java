@@ -0,0 +1,18 @@
+package osmreader;
+
+import java.time.Duration;
+
+/**
+ * Duration of one stage of a translation, and the number of bytes it wrote, counting lines passed to the graph sink
+ * as text lines.
+ */
+public record StageStatistics(String name, Duration elapsed, long bytesWritten) {
+
+    /**
+     * @return bytes written per second, or zero for stages too short to measure.
+     */
+    public double throughput() {
+        long nanos = elapsed.toNanos();
+        return nanos == 0 ? 0 : bytesWritten * 1e9 / nanos;
+    }
+}
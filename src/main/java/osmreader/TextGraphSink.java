@@ -0,0 +1,73 @@
+package osmreader;
+
+import io.FileUtility;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Writes the graph as "nodes.txt" and "edges.txt" to an output directory. Lines from the translator are written as
+ * they are, records are formatted as text lines.
+ */
+public class TextGraphSink implements GraphSink {
+    private final Path outputDirectory;
+    private final BufferedWriter nodeWriter;
+    private final BufferedWriter edgeWriter;
+
+    public TextGraphSink(Path outputDirectory) throws IOException {
+        this.outputDirectory = outputDirectory;
+        this.nodeWriter = FileUtility.newAsyncWriter(Paths.get(outputDirectory.toString(), "nodes.txt"), StandardCharsets.US_ASCII);
+        BufferedWriter edgeWriter;
+        try {
+            edgeWriter = FileUtility.newAsyncWriter(Paths.get(outputDirectory.toString(), "edges.txt"), StandardCharsets.US_ASCII);
+        } catch (IOException | RuntimeException e) {
+            nodeWriter.close();
+            throw e;
+        }
+        this.edgeWriter = edgeWriter;
+    }
+
+    @Override
+    public void node(long id, long osmId, double lat, double lon) throws IOException {
+        nodeLine(id+","+osmId+","+lat+","+lon);
+    }
+
+    @Override
+    public void node(long id, long osmId, double lat, double lon, boolean smallComponent) throws IOException {
+        nodeLine(id+","+osmId+","+lat+","+lon+(smallComponent ? ",1" : ",0"));
+    }
+
+    @Override
+    public void edge(long origin, long destination) throws IOException {
+        edgeLine(origin+","+destination);
+    }
+
+    @Override
+    public void nodeLine(String line) throws IOException {
+        nodeWriter.write(line);
+        nodeWriter.newLine();
+    }
+
+    @Override
+    public void edgeLine(String line) throws IOException {
+        edgeWriter.write(line);
+        edgeWriter.newLine();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            nodeWriter.close();
+        } finally {
+            edgeWriter.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return outputDirectory.toString();
+    }
+}
@@ -2,6 +2,10 @@ package osmreader;
 
 import io.FileSorter;
 import io.FileUtility;
+import io.LineConsumer;
+import io.MergeJoin;
+import io.MultiOrderSort;
+import io.TempDirectories;
 
 import javax.xml.stream.XMLStreamException;
 import java.io.*;
@@ -10,103 +14,238 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Stream;
 
 public class Translator implements Closeable {
+    private static final DateTimeFormatter dtf = DateTimeFormatter.ofPattern("HH:mm:ss");
     private final Reader reader;
     private final IDStrategy idStrategy;
     private Map<String, List<String>> filter;
     private FileSorter sorter;
     private Charset charset;
-    private final Path tempDirectory;
+    private final List<Path> tempDirectories;
+    private final TempDirectories tempFiles;
+    private final long referencedNodesLimit;
+    private NodeIdSet referencedNodes;
+    private long nodeCount;
+    private int minimumComponentSize;
+    private ComponentPruner.Mode componentPruning = ComponentPruner.Mode.DROP;
+    private GraphRenumberer.Ordering nodeOrdering = GraphRenumberer.Ordering.ID_STRATEGY;
+    private final List<StageStatistics> stages = new ArrayList<>();
+    private String stageName;
+    private long stageStart;
+    private long sinkBytes;
+    private String logPrefix = "";
 
     public Translator(Reader reader, long maxChunkSize, IDStrategy idStrategy) throws IOException {
+        this(reader, maxChunkSize, idStrategy, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    public Translator(Reader reader, long maxChunkSize, IDStrategy idStrategy, Path tempRoot) throws IOException {
+        this(reader, maxChunkSize, idStrategy, List.of(tempRoot));
+    }
+
+    /**
+     * @param tempRoots directories, preferably on different devices, over which temporary files are spread.
+     */
+    public Translator(Reader reader, long maxChunkSize, IDStrategy idStrategy, List<Path> tempRoots) throws IOException {
         this.reader = reader;
         this.idStrategy = idStrategy;
-        this.tempDirectory = Files.createTempDirectory("osm_reader_temporary");
+        // The referenced node set takes a quarter of the memory limit, and the sort chunks take the rest.
+        this.referencedNodesLimit = maxChunkSize / 4;
+        this.tempDirectories = new ArrayList<>(tempRoots.size());
+        try {
+            for (Path tempRoot : tempRoots)
+                this.tempDirectories.add(Files.createTempDirectory(tempRoot, "osm_reader_temporary"));
+            this.tempFiles = new TempDirectories(tempDirectories);
+        } catch (IOException | RuntimeException e) {
+            // close() is never called on a failed constructor, so remove the directories created so far.
+            for (Path tempDirectory : tempDirectories) {
+                try {
+                    Files.deleteIfExists(tempDirectory);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
         this.charset = StandardCharsets.US_ASCII;
-        this.sorter = new FileSorter(maxChunkSize, charset, null);
-        this.sorter.setTempDirectory(tempDirectory);
+        this.sorter = new FileSorter(maxChunkSize - referencedNodesLimit, charset, null);
+        this.sorter.setTempDirectories(tempFiles);
     }
 
+    /**
+     * Translates the input, and writes the graph to "nodes.txt" and "edges.txt" in the output directory.
+     */
     public void translate(Path outputDirectory) throws XMLStreamException, IOException {
+        try (GraphSink sink = new TextGraphSink(outputDirectory)) {
+            translate(sink);
+        }
+    }
+
+    /**
+     * Translates the input, and streams the graph into the sink. The sink is not closed.
+     */
+    public void translate(GraphSink sink) throws XMLStreamException, IOException {
+        stages.clear();
         // Step one: Extract relevant elements from XML, and write to file.
-        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("HH:mm:ss");
-        System.out.println(dtf.format(LocalDateTime.now())+" : Processing XML");
+        beginStage("Processing XML", "");
         Path[] files = extractXMLToFiles();
         Path nodes = files[0];
         Path edges = files[1];
-        Path registrations = files[2];
-        // Step two: Sort nodes, and registrations.
-        System.out.println(dtf.format(LocalDateTime.now())+" : Sorting nodes : " + String.format("%,d kilobytes", Files.size(nodes) / 1024));
-        sorter.setLineComparator(Comparator.comparing(o -> o.split(",")[0]));
-        Path sortedNodes = sorter.externalSort(nodes);
-
-        System.out.println(dtf.format(LocalDateTime.now())+" : Sorting node registrations : " + String.format("%,d kilobytes", Files.size(registrations) / 1024));
-        sorter.setLineComparator(String::compareTo);
-        Path sortedRegistration = sorter.externalSort(registrations);
-
-        // Step three: Filter redundant nodes:
-        System.out.println(dtf.format(LocalDateTime.now())+" : Filtering nodes");
-        Path filteredNodes = FileUtility.filterFile(sortedNodes, tempDirectory, sortedRegistration, ((o1, o2) -> o1.split(",")[0].compareTo(o2)));
-        System.out.println(dtf.format(LocalDateTime.now())+" : Filtered nodes : " + String.format("%,d kilobytes", Files.size(filteredNodes) / 1024));
-
-        // Step four: Generate new IDs.
-        System.out.println(dtf.format(LocalDateTime.now())+" : Generating new node IDs");
-        Path unsortedNodesWithNewIds = generateNewIDs(filteredNodes);
-
-        // Step five: Sort nodes by old ID.
-        System.out.println(dtf.format(LocalDateTime.now())+" : Sorting nodes by old ID : " + String.format("%,d kilobytes", Files.size(unsortedNodesWithNewIds) / 1024));
-        sorter.setLineComparator(Comparator.comparing(o -> o.split(",")[1]));
-        Path nodesWithNewIDs = sorter.externalSort(unsortedNodesWithNewIds);
+        endStage(nodes, edges);
+
+        // Step two: Filter nodes not referenced by any relevant way:
+        beginStage("Filtering nodes", String.format("%,d referenced nodes", referencedNodes.size()));
+        Path filteredNodes = filterNodes(nodes);
+        endStage(filteredNodes);
+        log("Filtered nodes : " + String.format("%,d kilobytes", Files.size(filteredNodes) / 1024));
+
+        // Without pruning or renumbering, nodes are final once they have new IDs, and edges once they are sorted
+        // for output, so those passes feed the sink, and no file of the final graph is written.
+        boolean isPruning = minimumComponentSize > 1;
+        boolean isRenumbering = nodeOrdering != GraphRenumberer.Ordering.ID_STRATEGY;
+        boolean isFinalAfterIDs = !isPruning && !isRenumbering;
+        // Lines passed to the sink count as written by the stage that passes them, as they would in a file.
+        LineConsumer nodeOutput = line -> {
+            sinkBytes += line.length() + 1;
+            sink.nodeLine(line);
+        };
+        LineConsumer edgeOutput = line -> {
+            sinkBytes += line.length() + 1;
+            sink.edgeLine(line);
+        };
+
+        // Step three: Generate new IDs. New IDs are assigned in the order the nodes are written, so this file is
+        // already sorted by new ID, and needs no sort for output.
+        beginStage("Generating new node IDs", "");
+        Path nodesByNewID = generateNewIDs(filteredNodes, isFinalAfterIDs ? nodeOutput : line -> {});
+        endStage(nodesByNewID);
+
+        // Step four: Sort nodes by old ID. This cannot share the runs of the sort in step three: a new ID is the
+        // rank of a node in IDStrategy order, which is only known once that sort is fully merged. The edge sorts
+        // in steps seven and nine depend on the joins before them in the same way.
+        beginStage("Sorting nodes by old ID", String.format("%,d kilobytes", Files.size(nodesByNewID) / 1024));
+        sorter.setLineComparator(Comparator.comparingLong(FileUtility.longColumn(1)));
+        Path nodesWithNewIDs = sorter.externalSort(nodesByNewID);
+        endStage(nodesWithNewIDs);
 
         // Step five: Sort edges by origin:
-        System.out.println(dtf.format(LocalDateTime.now())+" : Sorting edges by origin : " + String.format("%,d kilobytes", Files.size(edges) / 1024));
-        sorter.setLineComparator(Comparator.comparing(o -> o.split(",")[0]));
+        beginStage("Sorting edges by origin", String.format("%,d kilobytes", Files.size(edges) / 1024));
+        sorter.setLineComparator(Comparator.comparingLong(FileUtility.longColumn(0)));
         Path edgesSortedByOrigin = sorter.externalSort(edges);
+        endStage(edgesSortedByOrigin);
 
         // Step six: Replace origin IDs with new IDs.
-        System.out.println(dtf.format(LocalDateTime.now())+" : Replacing origin IDs with new IDs");
+        beginStage("Replacing origin IDs with new IDs", "");
         Path edgesWithNewOriginID = replaceIDs(nodesWithNewIDs, edgesSortedByOrigin, 0);
+        endStage(edgesWithNewOriginID);
 
         // Step seven: Sort edges by destination:
-        System.out.println(dtf.format(LocalDateTime.now())+" : Sorting edges by destination");
-        sorter.setLineComparator(Comparator.comparing(o -> o.split(",")[1]));
+        beginStage("Sorting edges by destination", "");
+        sorter.setLineComparator(Comparator.comparingLong(FileUtility.longColumn(1)));
         Path edgesSortedByDestination = sorter.externalSort(edgesWithNewOriginID);
-
-        System.out.println(dtf.format(LocalDateTime.now())+" : Replacing destination IDs with new IDs");
+        endStage(edgesSortedByDestination);
 
         // Step eight: Replace destination with new ID.
+        beginStage("Replacing destination IDs with new IDs", "");
         Path edgesWithNewIDs = replaceIDs(nodesWithNewIDs, edgesSortedByDestination, 1);
+        endStage(edgesWithNewIDs);
 
-        // Step eight point two five : Sort edges by origin for easier loading
-        sorter.setLineComparator(Comparator.comparing(o -> Integer.parseInt(o.split(",")[0])));
-        Path outputEdges = sorter.externalSort(edgesWithNewIDs);
+        // Step nine: Sort edges by origin for easier loading. Renumbering also needs them sorted by destination,
+        // which is produced from the same pass over the file, unless pruning changes the edges first.
+        boolean isPruningEdges = isPruning && componentPruning == ComponentPruner.Mode.DROP;
+        boolean needsEdgesByDestination = isRenumbering && !isPruningEdges;
+        beginStage("Sorting edges for output", needsEdgesByDestination ? "by origin and destination" : "");
+        List<Comparator<String>> edgeOrders = needsEdgesByDestination
+                ? List.of(Comparator.comparingLong(FileUtility.longColumn(0)), Comparator.comparingLong(FileUtility.longColumn(1)))
+                : List.of(Comparator.comparingLong(FileUtility.longColumn(0)));
+        Path outputEdges = null;
+        Path edgesByDestination = null;
+        try (MultiOrderSort sortedEdges = sorter.externalSort(edgesWithNewIDs, edgeOrders)) {
+            if (needsEdgesByDestination)
+                edgesByDestination = sortedEdges.merge(1);
+            if (isFinalAfterIDs)
+                sortedEdges.merge(0, edgeOutput);
+            else
+                outputEdges = sortedEdges.merge(0);
+        }
+        endStage(outputEdges, edgesByDestination);
+        Path outputNodes = nodesByNewID;
+
+        // Step ten: Prune strongly connected components that are too small to be useful.
+        // Without renumbering, the pruned graph is final, and is passed to the sink.
+        if (isPruning) {
+            beginStage("Pruning strongly connected components", "smaller than " + minimumComponentSize + " nodes");
+            ComponentPruner pruner = new ComponentPruner(minimumComponentSize, componentPruning, charset, tempFiles);
+            if (isRenumbering) {
+                Path[] pruned = pruner.prune(outputNodes, outputEdges, Math.toIntExact(nodeCount));
+                outputNodes = pruned[0];
+                outputEdges = pruned[1];
+                endStage(pruned);
+            } else {
+                pruner.prune(outputNodes, outputEdges, Math.toIntExact(nodeCount), nodeOutput, edgeOutput);
+                endStage();
+            }
+            if (componentPruning == ComponentPruner.Mode.DROP)
+                nodeCount -= pruner.getPrunedNodeCount();
+            log("Pruned components : " + String.format("%,d components, %,d nodes in small components", pruner.getComponentCount(), pruner.getPrunedNodeCount()));
+        }
+
+        // Step eleven: Renumber nodes in graph traversal order, so neighbours get nearby IDs. The final merges of
+        // the renumbered nodes, by new ID, and of the renumbered edges, by origin, feed the sink.
+        if (isRenumbering) {
+            beginStage("Renumbering nodes", nodeOrdering + " order");
+            if (edgesByDestination == null) {
+                sorter.setLineComparator(Comparator.comparingLong(FileUtility.longColumn(1)));
+                edgesByDestination = sorter.externalSort(outputEdges);
+            }
+            GraphRenumberer renumberer = new GraphRenumberer(nodeOrdering, sorter, charset, tempFiles);
+            renumberer.renumber(outputNodes, outputEdges, edgesByDestination, Math.toIntExact(nodeCount), nodeOutput, edgeOutput);
+            endStage();
+        }
+    }
 
-        // Step eight point five : Sort nodes for easy loading.
-        sorter.setLineComparator(Comparator.comparing(o -> o.split(",")[0]));
-        Path outputNodes = sorter.externalSort(nodesWithNewIDs);
+    private void beginStage(String name, String detail) {
+        log(name+(detail.isEmpty() ? "" : " : "+detail));
+        stageName = name;
+        stageStart = System.nanoTime();
+        sinkBytes = 0;
+    }
 
-        System.out.println(dtf.format(LocalDateTime.now())+" : Copying files to : "+outputDirectory.toString());
-        // Step nine: Copy temporary output files to permanent output directory.
-        FileUtility.copyWithOverwrite(outputEdges, Paths.get(outputDirectory.toString(),"edges.txt"));
-        FileUtility.copyWithOverwrite(outputNodes, Paths.get(outputDirectory.toString(),"nodes.txt"));
+    private void log(String message) {
+        System.out.println(dtf.format(LocalDateTime.now())+" : "+logPrefix+message);
+    }
 
+    private void endStage(Path... outputs) throws IOException {
+        long bytesWritten = sinkBytes;
+        for (Path output : outputs)
+            if (output != null)
+                bytesWritten += Files.size(output);
+        stages.add(new StageStatistics(stageName, Duration.ofNanos(System.nanoTime() - stageStart), bytesWritten));
+    }
+
+    /**
+     * @return duration and output size of every stage of the last translation, in the order they ran.
+     */
+    public List<StageStatistics> getStageStatistics() {
+        return List.copyOf(stages);
     }
 
     private Path[] extractXMLToFiles() throws XMLStreamException, IOException {
         // Create temporary output files...
-        Path nodes = Files.createTempFile(tempDirectory,"tmp","nodes");
-        Path edges = Files.createTempFile(tempDirectory, "tmp","nodes");
-        Path registration = Files.createTempFile(tempDirectory, "tmp", "reg");
+        Path nodes = tempFiles.createTempFile("tmp","nodes");
+        Path edges = tempFiles.createTempFile("tmp","edges");
+        referencedNodes = new NodeIdSet(referencedNodesLimit);
 
         try (OSMReader osmReader = new OSMReader(reader);
-             BufferedWriter nodeWriter = Files.newBufferedWriter(nodes, charset);
-             BufferedWriter edgeWriter = Files.newBufferedWriter(edges, charset);
-             BufferedWriter nodeRegistrationWriter = Files.newBufferedWriter(registration, charset)) {
+             BufferedWriter nodeWriter = FileUtility.newAsyncWriter(nodes, charset);
+             BufferedWriter edgeWriter = FileUtility.newAsyncWriter(edges, charset)) {
             while (osmReader.hasNext()) {
                 Element element = osmReader.next();
                 switch (element.getType()) {
@@ -122,10 +261,8 @@ public class Translator implements Closeable {
                         boolean isReversed = isReverse(wayElement.tags());
                         if (!hasCorrectTags(wayElement.tags()))
                             break;
-                        for (String id : wayElement.nodes()) {
-                            nodeRegistrationWriter.write(id);
-                            nodeRegistrationWriter.newLine();
-                        }
+                        for (String id : wayElement.nodes())
+                            referencedNodes.add(Long.parseLong(id));
                         for (int index = 0; index < wayElement.nodes().size()-1; index ++) {
                             if (!isReversed) {
                                 String edgeEntry = wayElement.nodes().get(index)+","+wayElement.nodes().get(index+1);
@@ -144,69 +281,70 @@ public class Translator implements Closeable {
                 }
             }
         }
-        return new Path[]{nodes, edges, registration};
+        return new Path[]{nodes, edges};
     }
 
-    private Path generateNewIDs(Path input) throws IOException {
-        Path temp = Files.createTempFile(tempDirectory,"tmp","newID");
+    private Path filterNodes(Path input) throws IOException {
+        Path output = tempFiles.createTempFile("tmp", "filtered", input);
         try (BufferedReader reader = Files.newBufferedReader(input, charset);
-            BufferedWriter writer = Files.newBufferedWriter(temp, charset)) {
+             BufferedWriter writer = FileUtility.newAsyncWriter(output, charset)) {
             String line;
             while ((line = reader.readLine()) != null) {
-                String[] splitLine = line.split(",");
-                String newID = idStrategy.generateID(splitLine[0], splitLine[1], splitLine[2]);
-                String entry = newID+","+line;
-                writer.write(entry);
-                writer.newLine();
+                long id = Long.parseLong(line, 0, line.indexOf(','), 10);
+                if (referencedNodes.contains(id)) {
+                    writer.write(line);
+                    writer.newLine();
+                }
             }
         }
-        Path output = Files.createTempFile(tempDirectory,"tmp", "newID");
-        sorter.setLineComparator((Comparator.comparing(o -> Long.parseLong(o.split(",")[0]))));
-        Path sortedTemp = sorter.externalSort(temp);
-        try (BufferedReader reader = Files.newBufferedReader(sortedTemp, charset);
-             BufferedWriter writer = Files.newBufferedWriter(output, charset)) {
-            long counter = 0;
+        // The set is only needed for filtering, release it before the sorting stages.
+        referencedNodes = null;
+        return output;
+    }
+
+    /**
+     * Sorts the nodes in the order of the {@link IDStrategy}, and numbers them as they come out of the merge.
+     * @param finalNodes receives the numbered nodes as well, when they are final.
+     * @return the numbered nodes, sorted by new ID.
+     */
+    private Path generateNewIDs(Path input, LineConsumer finalNodes) throws IOException {
+        Path temp = tempFiles.createTempFile("tmp","newID", input);
+        try (BufferedReader reader = Files.newBufferedReader(input, charset);
+            BufferedWriter writer = FileUtility.newAsyncWriter(temp, charset)) {
             String line;
             while ((line = reader.readLine()) != null) {
                 String[] splitLine = line.split(",");
-                String newID = Long.toString(counter);
-                counter++;
-                String entry = newID+","+String.join(",", Arrays.copyOfRange(splitLine, 1, 4));
+                String newID = idStrategy.generateID(splitLine[0], splitLine[1], splitLine[2]);
+                String entry = newID+","+line;
                 writer.write(entry);
                 writer.newLine();
             }
         }
+        sorter.setLineComparator(Comparator.comparingLong(FileUtility.longColumn(0)));
+        Path output = tempFiles.createTempFile("tmp", "newID", temp);
+        try (BufferedWriter writer = FileUtility.newAsyncWriter(output, charset)) {
+            LineConsumer nodeOutput = FileUtility.lineConsumer(writer).andThen(finalNodes);
+            nodeCount = 0;
+            // The strategy key is replaced by a counter, in the order of the keys.
+            sorter.externalSort(temp, line -> nodeOutput.accept(nodeCount++ + line.substring(line.indexOf(','))));
+        }
         return output;
     }
 
+    /**
+     * Replaces one column of the edges with new node IDs, by joining on old IDs. Both files must be sorted
+     * numerically on the old ID. Edges referencing nodes that are not present are dropped.
+     */
     private Path replaceIDs(Path nodes, Path edges, int index) throws IOException {
-        Path output = Files.createTempFile(tempDirectory,"tmp", "replaceID");
-        try (Scanner nodeScanner = new Scanner(nodes);
-             Scanner edgeScanner = new Scanner(edges);
-             BufferedWriter writer = Files.newBufferedWriter(output, charset)) {
-            if (!nodeScanner.hasNext())
-                return output;
-            String nodeEntry = nodeScanner.nextLine();
-            String nodeID = nodeEntry.split(",")[1];
-            String newNodeID = nodeEntry.split(",")[0];
-            String edgeID;
-            while (edgeScanner.hasNext()) {
-                String edge = edgeScanner.nextLine();
-                edgeID = edge.split(",")[index];
-                while (nodeID.compareTo(edgeID) < 0) {
-                    nodeEntry = nodeScanner.nextLine();
-                    nodeID = nodeEntry.split(",")[1];
-                    newNodeID = nodeEntry.split(",")[0];
-                }
-                if (nodeID.compareTo(edgeID) == 0) {
-                    String[] splitEdge = edge.split(",");
-                    splitEdge[index] = newNodeID;
-                    String entry = splitEdge[0]+","+splitEdge[1];
-                    writer.write(entry);
-                    writer.newLine();
-                }
-            }
-        }
+        Path output = tempFiles.createTempFile("tmp", "replaceID", edges);
+        MergeJoin join = new MergeJoin(charset, FileUtility.longColumn(index), FileUtility.longColumn(1));
+        join.setCombiner((edge, node) -> {
+            String newNodeID = node.substring(0, node.indexOf(','));
+            int separator = edge.indexOf(',');
+            return index == 0 ? newNodeID + edge.substring(separator) : edge.substring(0, separator + 1) + newNodeID;
+        });
+        join.join(edges, nodes, output, MergeJoin.Type.INNER);
+        log("Replaced IDs : " + String.format("%,d edges kept, %,d edges dropped", join.getMatched(), join.getUnmatched()));
         return output;
     }
 
@@ -214,6 +352,45 @@ public class Translator implements Closeable {
         this.filter = filter;
     }
 
+    /**
+     * Enables pruning of strongly connected components with fewer than minimumSize nodes, such as parking lots or
+     * ways cut off by the extract boundary. Disabled by default.
+     */
+    public void setComponentPruning(int minimumSize, ComponentPruner.Mode mode) {
+        this.minimumComponentSize = minimumSize;
+        this.componentPruning = mode;
+    }
+
+    /**
+     * Sets the order of the final node IDs. Defaults to the order of the {@link IDStrategy}.
+     */
+    public void setNodeOrdering(GraphRenumberer.Ordering nodeOrdering) {
+        this.nodeOrdering = nodeOrdering;
+    }
+
+    /**
+     * Merges the runs of every sort in this many key ranges at once. Defaults to a single threaded merge.
+     */
+    public void setMergeParallelism(int mergeParallelism) {
+        sorter.setMergeParallelism(mergeParallelism);
+    }
+
+    /**
+     * Runs parallel merges on the given executor instead of on threads started for every merge, so several
+     * translations can share one warm pool.
+     */
+    public void setMergeExecutor(ExecutorService executor) {
+        sorter.setExecutor(executor);
+    }
+
+    /**
+     * Prefixes every log line of this translator, so the lines of translations running side by side can be told
+     * apart.
+     */
+    public void setLogPrefix(String logPrefix) {
+        this.logPrefix = logPrefix;
+    }
+
     private boolean hasCorrectTags(Map<String, String> tags) {
         for (String key : tags.keySet())
             if (filter.getOrDefault(key, new ArrayList<>(0)).contains(tags.get(key)))
@@ -247,9 +424,11 @@ public class Translator implements Closeable {
     public void close() throws IOException {
         reader.close();
         // Delete all temporary files...
-        try (Stream<Path> walk = Files.walk(tempDirectory)) {
-            for (Path file : walk.sorted(Comparator.reverseOrder()).toList())
-                Files.delete(file);
+        for (Path tempDirectory : tempDirectories) {
+            try (Stream<Path> walk = Files.walk(tempDirectory)) {
+                for (Path file : walk.sorted(Comparator.reverseOrder()).toList())
+                    Files.delete(file);
+            }
         }
     }
 }
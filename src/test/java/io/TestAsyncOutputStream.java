@@ -0,0 +1,82 @@
+package io;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+public class TestAsyncOutputStream {
+    private Path output;
+
+    @BeforeEach
+    public void createFile() throws IOException {
+        output = Files.createTempFile("output", "TestAsyncOutputStream");
+    }
+
+    @AfterEach
+    public void deleteFile() throws IOException {
+        Files.delete(output);
+    }
+
+    @Test
+    public void TestWrittenLinesAreReadBackInOrder() throws IOException {
+        try (BufferedWriter writer = FileUtility.newAsyncWriter(output, StandardCharsets.US_ASCII)) {
+            for (int index = 0; index < 1000000; index++) {
+                writer.write(Integer.toString(index));
+                writer.newLine();
+            }
+        }
+        try (BufferedReader reader = Files.newBufferedReader(output, StandardCharsets.US_ASCII)) {
+            for (int index = 0; index < 1000000; index++)
+                Assertions.assertEquals(Integer.toString(index), reader.readLine());
+            Assertions.assertEquals(null, reader.readLine());
+        }
+    }
+
+    @Test
+    public void TestWritesLargerThanBufferAreSplitCorrectly() throws IOException {
+        byte[] bytes = new byte[10 * 1024 + 17];
+        new Random(42).nextBytes(bytes);
+        try (OutputStream stream = new AsyncOutputStream(output, 1024)) {
+            stream.write(bytes, 0, 100);
+            stream.write(bytes[100]);
+            stream.write(bytes, 101, bytes.length - 101);
+        }
+        Assertions.assertTrue(Arrays.equals(bytes, Files.readAllBytes(output)));
+    }
+
+    @Test
+    public void TestWriteFailureIsReportedOnceAndStopsTheWriter() throws InterruptedException {
+        // A device that is always full, only available on Linux.
+        Path full = Paths.get("/dev/full");
+        if (!Files.isWritable(full))
+            return;
+        IOException failure = Assertions.assertThrows(IOException.class, () -> {
+            try (BufferedWriter writer = FileUtility.newAsyncWriter(full, StandardCharsets.US_ASCII)) {
+                for (int index = 0; index < 10000000; index++) {
+                    writer.write(Integer.toString(index));
+                    writer.newLine();
+                }
+            }
+        });
+        Assertions.assertTrue(failure.getSuppressed().length <= 1);
+        // The writer stops by itself after a failure, even if the stream is never closed.
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("async-writer-full")) {
+                thread.join(5000);
+                Assertions.assertFalse(thread.isAlive());
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package io;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestMergeJoin {
+    private final List<Path> files = new ArrayList<>();
+    private Path edges;
+    private Path nodes;
+
+    @BeforeEach
+    public void createFiles() throws IOException {
+        // Edges sorted numerically by origin, nodes ("new,old") sorted numerically by old ID.
+        edges = createFile("3,1", "9,2", "9,4", "10,3", "12,5", "40,6");
+        nodes = createFile("0,3", "1,9", "1,9", "2,10", "3,11", "4,40");
+    }
+
+    @AfterEach
+    public void deleteFiles() throws IOException {
+        for (Path file : files)
+            Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void TestSemiJoinKeepsMatchedRecords() throws IOException {
+        MergeJoin join = createJoin();
+        List<String> result = Files.readAllLines(join.join(edges, nodes, createFile(), MergeJoin.Type.SEMI));
+        Assertions.assertEquals(List.of("3,1", "9,2", "9,4", "10,3", "40,6"), result);
+        Assertions.assertEquals(5, join.getMatched());
+        Assertions.assertEquals(1, join.getUnmatched());
+    }
+
+    @Test
+    public void TestInnerJoinCombinesMatchedRecords() throws IOException {
+        MergeJoin join = createJoin();
+        join.setCombiner((edge, node) -> node.split(",")[0] + "," + edge.split(",")[1]);
+        List<String> result = Files.readAllLines(join.join(edges, nodes, createFile(), MergeJoin.Type.INNER));
+        Assertions.assertEquals(List.of("0,1", "1,2", "1,4", "2,3", "4,6"), result);
+    }
+
+    @Test
+    public void TestAntiJoinKeepsUnmatchedRecords() throws IOException {
+        MergeJoin join = createJoin();
+        List<String> result = Files.readAllLines(join.join(edges, nodes, createFile(), MergeJoin.Type.ANTI));
+        Assertions.assertEquals(List.of("12,5"), result);
+        Assertions.assertEquals(1, join.getUnmatched());
+    }
+
+    private MergeJoin createJoin() {
+        return new MergeJoin(StandardCharsets.US_ASCII, FileUtility.longColumn(0), FileUtility.longColumn(1));
+    }
+
+    private Path createFile(String... lines) throws IOException {
+        Path file = Files.createTempFile("join", "TestMergeJoin");
+        files.add(file);
+        Files.write(file, List.of(lines));
+        return file;
+    }
+}
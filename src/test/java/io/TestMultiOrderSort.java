@@ -0,0 +1,96 @@
+package io;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+public class TestMultiOrderSort {
+    private Path directory;
+    private Path input;
+    private List<String> lines;
+
+    @BeforeEach
+    public void createFile() throws IOException {
+        directory = Files.createTempDirectory("TestMultiOrderSort");
+        input = directory.resolve("input");
+        lines = new ArrayList<>();
+        Random random = new Random(3);
+        try (BufferedWriter writer = Files.newBufferedWriter(input)) {
+            for (int index = 0; index < 200000; index++) {
+                String line = random.nextInt(1000000) + "," + random.nextInt(1000000);
+                lines.add(line);
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+    }
+
+    @AfterEach
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> walk = Files.walk(directory)) {
+            for (Path file : walk.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(file);
+        }
+    }
+
+    @Test
+    public void TestEveryOrderIsSortedFromOnePass() throws IOException {
+        FileSorter sorter = new FileSorter(512 * 1024, StandardCharsets.US_ASCII, null);
+        sorter.setTempDirectory(directory);
+        Comparator<String> byFirst = Comparator.comparingLong(FileUtility.longColumn(0));
+        Comparator<String> bySecond = Comparator.comparingLong(FileUtility.longColumn(1));
+        try (MultiOrderSort sorted = sorter.externalSort(input, List.of(byFirst, bySecond))) {
+            List<String> first = Files.readAllLines(sorted.merge(0));
+            List<String> second = Files.readAllLines(sorted.merge(1));
+            List<String> expectedFirst = new ArrayList<>(lines);
+            expectedFirst.sort(byFirst);
+            List<String> expectedSecond = new ArrayList<>(lines);
+            expectedSecond.sort(bySecond);
+            Assertions.assertEquals(expectedFirst.stream().map(line -> line.split(",")[0]).toList(), first.stream().map(line -> line.split(",")[0]).toList());
+            Assertions.assertEquals(expectedSecond.stream().map(line -> line.split(",")[1]).toList(), second.stream().map(line -> line.split(",")[1]).toList());
+            Assertions.assertEquals(sorted.merge(0), sorted.merge(0));
+        }
+    }
+
+    @Test
+    public void TestUnmergedOrdersAreDeletedOnClose() throws IOException {
+        FileSorter sorter = new FileSorter(512 * 1024, StandardCharsets.US_ASCII, null);
+        sorter.setTempDirectory(directory);
+        Path merged;
+        try (MultiOrderSort sorted = sorter.externalSort(input, List.of(String::compareTo, Comparator.<String>reverseOrder()))) {
+            merged = sorted.merge(0);
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            Assertions.assertEquals(List.of(input, merged).stream().sorted().toList(), files.sorted().toList());
+        }
+    }
+
+    @Test
+    public void TestOrderMergedIntoConsumerLeavesNoFile() throws IOException {
+        FileSorter sorter = new FileSorter(512 * 1024, StandardCharsets.US_ASCII, null);
+        sorter.setTempDirectory(directory);
+        List<String> consumed = new ArrayList<>();
+        try (MultiOrderSort sorted = sorter.externalSort(input, List.of(String::compareTo, Comparator.<String>reverseOrder()))) {
+            sorted.merge(1, consumed::add);
+            Assertions.assertThrows(IllegalStateException.class, () -> sorted.merge(1));
+        }
+        List<String> expected = new ArrayList<>(lines);
+        expected.sort(Comparator.reverseOrder());
+        Assertions.assertEquals(expected, consumed);
+        try (Stream<Path> files = Files.list(directory)) {
+            Assertions.assertEquals(List.of(input), files.toList());
+        }
+    }
+}
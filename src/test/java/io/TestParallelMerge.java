@@ -0,0 +1,86 @@
+package io;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+public class TestParallelMerge {
+    private Path directory;
+    private Path input;
+    private List<String> lines;
+
+    @BeforeEach
+    public void createFile() throws IOException {
+        directory = Files.createTempDirectory("TestParallelMerge");
+        input = directory.resolve("input");
+        lines = new ArrayList<>();
+        Random random = new Random(5);
+        // Few distinct keys, so splitters fall on long runs of equal lines, and multi byte characters.
+        try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+            for (int index = 0; index < 200000; index++) {
+                String line = random.nextInt(50) + ",\u00f8" + random.nextInt(1000);
+                lines.add(line);
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+    }
+
+    @AfterEach
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> walk = Files.walk(directory)) {
+            for (Path file : walk.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(file);
+        }
+    }
+
+    @Test
+    public void TestParallelMergeEqualsSortedInput() throws IOException {
+        FileSorter sorter = new FileSorter(512 * 1024, StandardCharsets.UTF_8, String::compareTo);
+        sorter.setTempDirectory(directory);
+        sorter.setMergeParallelism(4);
+        Path sorted = sorter.externalSort(input);
+        List<String> expected = new ArrayList<>(lines);
+        expected.sort(String::compareTo);
+        Assertions.assertEquals(expected, Files.readAllLines(sorted, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void TestParallelMergeDeletesRunsAndSegments() throws IOException {
+        FileSorter sorter = new FileSorter(512 * 1024, StandardCharsets.UTF_8, Comparator.comparingLong(FileUtility.longColumn(0)));
+        sorter.setTempDirectory(directory);
+        sorter.setMergeParallelism(3);
+        Path sorted = sorter.externalSort(input);
+        try (Stream<Path> files = Files.list(directory)) {
+            Assertions.assertEquals(List.of(input, sorted).stream().sorted().toList(), files.sorted().toList());
+        }
+        Assertions.assertEquals(lines.size(), Files.readAllLines(sorted, StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void TestParallelMergeIntoConsumerKeepsOrder() throws IOException {
+        FileSorter sorter = new FileSorter(512 * 1024, StandardCharsets.UTF_8, String::compareTo);
+        sorter.setTempDirectory(directory);
+        sorter.setMergeParallelism(4);
+        List<String> consumed = new ArrayList<>();
+        sorter.externalSort(input, consumed::add);
+        List<String> expected = new ArrayList<>(lines);
+        expected.sort(String::compareTo);
+        Assertions.assertEquals(expected, consumed);
+        try (Stream<Path> files = Files.list(directory)) {
+            Assertions.assertEquals(List.of(input), files.toList());
+        }
+    }
+}
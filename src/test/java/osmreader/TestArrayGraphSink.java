@@ -0,0 +1,34 @@
+package osmreader;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+public class TestArrayGraphSink {
+
+    @Test
+    public void TestGraphIsCollectedInCompressedSparseRows() throws IOException {
+        ArrayGraphSink sink = new ArrayGraphSink();
+        for (String node : List.of("0,700,55.1,12.1", "1,14,55.2,12.2", "2,21,55.3,12.3"))
+            sink.nodeLine(node);
+        for (String edge : List.of("0,1", "0,2", "2,0"))
+            sink.edgeLine(edge);
+        Assertions.assertEquals(3, sink.getNodeCount());
+        Assertions.assertEquals(3, sink.getEdgeCount());
+        Assertions.assertArrayEquals(new long[]{700, 14, 21}, sink.getOsmIds());
+        Assertions.assertEquals(55.2, sink.getLatitudes()[1], 0.0);
+        Assertions.assertArrayEquals(new int[]{0, 2, 2, 3}, sink.getEdgeOffsets());
+        Assertions.assertArrayEquals(new int[]{1, 2, 0}, sink.getDestinations());
+    }
+
+    @Test
+    public void TestComponentFlagsAreKept() throws IOException {
+        ArrayGraphSink sink = new ArrayGraphSink();
+        for (String node : List.of("0,700,55.1,12.1,0", "1,14,55.2,12.2,1", "2,21,55.3,12.3,0"))
+            sink.nodeLine(node);
+        Assertions.assertArrayEquals(new boolean[]{false, true, false}, sink.getSmallComponentFlags());
+        Assertions.assertArrayEquals(new long[]{700, 14, 21}, sink.getOsmIds());
+    }
+}
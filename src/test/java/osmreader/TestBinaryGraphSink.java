@@ -0,0 +1,61 @@
+package osmreader;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public class TestBinaryGraphSink {
+    private Path directory;
+
+    @BeforeEach
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("TestBinaryGraphSink");
+    }
+
+    @AfterEach
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> walk = Files.walk(directory)) {
+            for (Path file : walk.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(file);
+        }
+    }
+
+    @Test
+    public void TestRecordsAreWrittenInFixedSize() throws IOException {
+        try (BinaryGraphSink sink = new BinaryGraphSink(directory)) {
+            sink.node(0, 700, 55.1, 12.1);
+            sink.node(1, 14, 55.2, 12.2);
+            sink.edge(1, 0);
+        }
+        ByteBuffer nodes = ByteBuffer.wrap(Files.readAllBytes(directory.resolve("nodes.bin")));
+        Assertions.assertEquals(2 * BinaryGraphSink.NODE_RECORD_SIZE, nodes.capacity());
+        nodes.position(BinaryGraphSink.NODE_RECORD_SIZE);
+        Assertions.assertEquals(1, nodes.getInt());
+        Assertions.assertEquals(14, nodes.getLong());
+        Assertions.assertEquals(55.2, nodes.getDouble(), 0.0);
+        ByteBuffer edges = ByteBuffer.wrap(Files.readAllBytes(directory.resolve("edges.bin")));
+        Assertions.assertEquals(BinaryGraphSink.EDGE_RECORD_SIZE, edges.capacity());
+        Assertions.assertEquals(1, edges.getInt());
+        Assertions.assertEquals(0, edges.getInt());
+        Assertions.assertFalse(Files.exists(directory.resolve("flags.bin")));
+    }
+
+    @Test
+    public void TestComponentFlagsAreWrittenInNodeOrder() throws IOException {
+        try (BinaryGraphSink sink = new BinaryGraphSink(directory)) {
+            sink.node(0, 700, 55.1, 12.1, false);
+            sink.node(1, 14, 55.2, 12.2, true);
+            sink.node(2, 21, 55.3, 12.3, false);
+        }
+        Assertions.assertArrayEquals(new byte[]{0, 1, 0}, Files.readAllBytes(directory.resolve("flags.bin")));
+        Assertions.assertEquals(3 * BinaryGraphSink.NODE_RECORD_SIZE, Files.size(directory.resolve("nodes.bin")));
+    }
+}
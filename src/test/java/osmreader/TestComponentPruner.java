@@ -0,0 +1,55 @@
+package osmreader;
+
+import io.TempDirectories;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class TestComponentPruner {
+    private Path directory;
+    private Path nodes;
+    private Path edges;
+
+    @BeforeEach
+    public void createFiles() throws IOException {
+        // Components: {0, 2, 4} is a cycle, {1, 3} a two-way street, and 5 is only reachable from 4.
+        directory = Files.createTempDirectory("TestComponentPruner");
+        nodes = Files.write(directory.resolve("nodes"), List.of("0,10,1,1", "1,11,1,1", "2,12,1,1", "3,13,1,1", "4,14,1,1", "5,15,1,1"));
+        edges = Files.write(directory.resolve("edges"), List.of("0,2", "1,3", "2,4", "3,1", "4,0", "4,5"));
+    }
+
+    @AfterEach
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> walk = Files.walk(directory)) {
+            for (Path file : walk.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(file);
+        }
+    }
+
+    @Test
+    public void TestSmallComponentsAreDroppedAndIDsRenumbered() throws IOException {
+        ComponentPruner pruner = new ComponentPruner(3, ComponentPruner.Mode.DROP, StandardCharsets.US_ASCII, TempDirectories.of(directory));
+        Path[] pruned = pruner.prune(nodes, edges, 6);
+        Assertions.assertEquals(3, pruner.getComponentCount());
+        Assertions.assertEquals(3, pruner.getPrunedNodeCount());
+        Assertions.assertEquals(List.of("0,10,1,1", "1,12,1,1", "2,14,1,1"), Files.readAllLines(pruned[0]));
+        Assertions.assertEquals(List.of("0,1", "1,2", "2,0"), Files.readAllLines(pruned[1]));
+    }
+
+    @Test
+    public void TestSmallComponentsAreFlagged() throws IOException {
+        ComponentPruner pruner = new ComponentPruner(2, ComponentPruner.Mode.FLAG, StandardCharsets.US_ASCII, TempDirectories.of(directory));
+        Path[] pruned = pruner.prune(nodes, edges, 6);
+        Assertions.assertEquals(List.of("0,10,1,1,0", "1,11,1,1,0", "2,12,1,1,0", "3,13,1,1,0", "4,14,1,1,0", "5,15,1,1,1"), Files.readAllLines(pruned[0]));
+        Assertions.assertEquals(edges, pruned[1]);
+    }
+}
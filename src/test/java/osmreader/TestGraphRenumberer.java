@@ -0,0 +1,126 @@
+package osmreader;
+
+import io.FileSorter;
+import io.TempDirectories;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class TestGraphRenumberer {
+    private static final int NODE_COUNT = 9;
+    private Path directory;
+    private Path nodes;
+    private Path edgesByOrigin;
+    private Path edgesByDestination;
+
+    @BeforeEach
+    public void createFiles() throws IOException {
+        // Two weakly connected parts with interleaved IDs: {0, 2, 4, 6, 7, 8}, a node 0 with a leaf 4 and the paths
+        // 0-2-6 and 0-8-7, and {1, 3, 5}, with edges 1->3 and 5->3.
+        directory = Files.createTempDirectory("TestGraphRenumberer");
+        List<String> nodeLines = new ArrayList<>();
+        for (int node = 0; node < NODE_COUNT; node++)
+            nodeLines.add(node + "," + (100 + node) + ",1,1");
+        nodes = Files.write(directory.resolve("nodes"), nodeLines);
+        edgesByOrigin = Files.write(directory.resolve("edgesByOrigin"), List.of("0,2", "0,4", "0,8", "1,3", "2,6", "5,3", "8,7"));
+        edgesByDestination = Files.write(directory.resolve("edgesByDestination"), List.of("0,2", "1,3", "5,3", "0,4", "2,6", "8,7", "0,8"));
+    }
+
+    @AfterEach
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> walk = Files.walk(directory)) {
+            for (Path file : walk.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(file);
+        }
+    }
+
+    @Test
+    public void TestBreadthFirstNumbersEachPartInVisitOrder() throws IOException {
+        Path[] renumbered = renumber(GraphRenumberer.Ordering.BREADTH_FIRST);
+        // Visit order: 0, 2, 4, 8, 6, 7 from root 0, then 1, 3, 5 from root 1.
+        int[] newIDs = {0, 6, 1, 7, 2, 8, 4, 5, 3};
+        assertRenumbered(newIDs, renumbered);
+    }
+
+    @Test
+    public void TestReverseCuthillMcKeeReversesAndOrdersByDegree() throws IOException {
+        Path[] renumbered = renumber(GraphRenumberer.Ordering.REVERSE_CUTHILL_MCKEE);
+        // Starts from the last nodes of the breadth first order, 7 and 5. From 0, the leaf 4 is visited before 2,
+        // which has a higher degree, giving 7, 8, 0, 4, 2, 6, 5, 3, 1, numbered in reverse.
+        int[] newIDs = {6, 0, 4, 1, 5, 2, 3, 8, 7};
+        assertRenumbered(newIDs, renumbered);
+    }
+
+    @Test
+    public void TestRenumberingShortensEdges() throws IOException {
+        int before = maximumGap(Files.readAllLines(edgesByOrigin));
+        Assertions.assertTrue(maximumGap(Files.readAllLines(renumber(GraphRenumberer.Ordering.BREADTH_FIRST)[1])) < before);
+        Assertions.assertTrue(maximumGap(Files.readAllLines(renumber(GraphRenumberer.Ordering.REVERSE_CUTHILL_MCKEE)[1])) < before);
+    }
+
+    @Test
+    public void TestIDStrategyOrderingKeepsTheGraph() throws IOException {
+        Path[] renumbered = renumber(GraphRenumberer.Ordering.ID_STRATEGY);
+        Assertions.assertEquals(nodes, renumbered[0]);
+        Assertions.assertEquals(edgesByOrigin, renumbered[1]);
+    }
+
+    @Test
+    public void TestRenumberedGraphIsPassedOnInOutputOrder() throws IOException {
+        FileSorter sorter = new FileSorter(1024 * 1024, StandardCharsets.US_ASCII, null);
+        sorter.setTempDirectory(directory);
+        GraphRenumberer renumberer = new GraphRenumberer(GraphRenumberer.Ordering.BREADTH_FIRST, sorter, StandardCharsets.US_ASCII, TempDirectories.of(directory));
+        List<String> nodeLines = new ArrayList<>();
+        List<String> edgeLines = new ArrayList<>();
+        renumberer.renumber(nodes, edgesByOrigin, edgesByDestination, NODE_COUNT, nodeLines::add, edgeLines::add);
+        Path[] renumbered = renumber(GraphRenumberer.Ordering.BREADTH_FIRST);
+        List<String> expectedNodes = new ArrayList<>(Files.readAllLines(renumbered[0]));
+        expectedNodes.sort(Comparator.comparingInt(node -> Integer.parseInt(node.split(",")[0])));
+        Assertions.assertEquals(expectedNodes, nodeLines);
+        Assertions.assertEquals(Files.readAllLines(renumbered[1]), edgeLines);
+    }
+
+    private Path[] renumber(GraphRenumberer.Ordering ordering) throws IOException {
+        FileSorter sorter = new FileSorter(1024 * 1024, StandardCharsets.US_ASCII, null);
+        sorter.setTempDirectory(directory);
+        GraphRenumberer renumberer = new GraphRenumberer(ordering, sorter, StandardCharsets.US_ASCII, TempDirectories.of(directory));
+        return renumberer.renumber(nodes, edgesByOrigin, edgesByDestination, NODE_COUNT);
+    }
+
+    /**
+     * Checks that nodes keep their order and attributes, and edges are renumbered and sorted by origin.
+     */
+    private void assertRenumbered(int[] newIDs, Path[] renumbered) throws IOException {
+        List<String> expectedNodes = new ArrayList<>();
+        for (int node = 0; node < NODE_COUNT; node++)
+            expectedNodes.add(newIDs[node] + "," + (100 + node) + ",1,1");
+        Assertions.assertEquals(expectedNodes, Files.readAllLines(renumbered[0]));
+
+        List<String> expectedEdges = new ArrayList<>();
+        for (String edge : Files.readAllLines(edgesByOrigin)) {
+            String[] endpoints = edge.split(",");
+            expectedEdges.add(newIDs[Integer.parseInt(endpoints[0])] + "," + newIDs[Integer.parseInt(endpoints[1])]);
+        }
+        expectedEdges.sort(Comparator.comparingInt(edge -> Integer.parseInt(edge.split(",")[0])));
+        Assertions.assertEquals(expectedEdges, Files.readAllLines(renumbered[1]));
+    }
+
+    private static int maximumGap(List<String> edges) {
+        int gap = 0;
+        for (String edge : edges) {
+            String[] endpoints = edge.split(",");
+            gap = Math.max(gap, Math.abs(Integer.parseInt(endpoints[0]) - Integer.parseInt(endpoints[1])));
+        }
+        return gap;
+    }
+}
@@ -0,0 +1,63 @@
+package osmreader;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class TestNodeIdSet {
+
+    @Test
+    public void TestContainsExactlyTheAddedIDs() {
+        NodeIdSet set = new NodeIdSet(1024 * 1024);
+        Set<Long> ids = new HashSet<>();
+        Random random = new Random(7);
+        for (int index = 0; index < 200000; index++) {
+            long id = random.nextInt(5000000);
+            ids.add(id);
+            set.add(id);
+        }
+        Assertions.assertEquals(ids.size(), set.size());
+        for (long id = 0; id < 5000000; id++)
+            Assertions.assertEquals(ids.contains(id), set.contains(id));
+    }
+
+    @Test
+    public void TestDenseGroupsSpilledOffHeapKeepTheirContent() {
+        // A heap limit of zero forces every dense group into an off-heap bitmap.
+        NodeIdSet set = new NodeIdSet(0);
+        for (long id = 10000000000L; id < 10000200000L; id += 2)
+            set.add(id);
+        Assertions.assertEquals(100000, set.size());
+        Assertions.assertTrue(set.contains(10000000000L));
+        Assertions.assertFalse(set.contains(10000000001L));
+        Assertions.assertTrue(set.contains(10000199998L));
+        Assertions.assertFalse(set.contains(10000200000L));
+    }
+
+    @Test
+    public void TestDuplicatesAreCountedOnce() {
+        NodeIdSet set = new NodeIdSet(1024 * 1024);
+        for (int round = 0; round < 3; round++)
+            for (long id = 0; id < 10000; id++)
+                set.add(id);
+        Assertions.assertEquals(10000, set.size());
+    }
+
+    @Test
+    public void TestHeapFootprintCountsSparseGroups() {
+        // One ID per group gives only small sorted arrays, which take no bitmap space but still cost heap.
+        NodeIdSet set = new NodeIdSet(0);
+        for (long group = 0; group < 1000; group++)
+            set.add(group << 16);
+        long sparse = set.heapBytes();
+        Assertions.assertTrue(sparse >= 1000 * (64 + 4 * Character.BYTES));
+        // Growing the arrays of the same groups is counted as well.
+        for (long group = 0; group < 1000; group++)
+            for (long low = 1; low < 100; low++)
+                set.add((group << 16) | low);
+        Assertions.assertTrue(set.heapBytes() >= sparse + 1000 * 96 * Character.BYTES);
+    }
+}